@@ -9,6 +9,8 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -24,12 +26,36 @@ public class Configuration {
     public static final String PORT = "PORT";
     public static final String JETTY_MAX_THREADS = "JETTY_MAX_THREADS";
     public static final String CLASSES = "restolino.classes";
+    public static final String DEPLOY = "restolino.deploy";
     public static final String PACKAGE_PREFIX = "restolino.packageprefix";
+    public static final String CLASS_INDEX = "restolino.classindex";
+    public static final String SCANNER = "restolino.scanner";
+    public static final String STARTUP_THREADS = "restolino.startupthreads";
+    public static final String RELOAD_QUIET = "restolino.reloadquiet";
+    public static final String WARM_UP_ITERATIONS = "restolino.warmupiterations";
+    public static final String WARM_UP_MILLIS = "restolino.warmupmillis";
+    public static final String TRAINING = "restolino.training";
+    public static final String DRAIN_GRACE = "restolino.draingrace";
+    public static final String STOP_TIMEOUT = "restolino.stoptimeout";
     public static final String FILES = "restolino.files";
     public static final String FILES_RESOURCE = "web";
     public static final String AUTH_USERNAME = "restolino.username";
     public static final String AUTH_PASSWORD = "restolino.password";
     public static final String AUTH_REALM = "restolino.realm";
+    public static final String JSON_ENGINE = "restolino.jsonengine";
+    public static final String RESPONSE_BUFFER = "restolino.responsebuffer";
+    public static final String MAX_REQUEST_SIZE = "restolino.maxrequestsize";
+    public static final String ENCODINGS = "restolino.encodings";
+    public static final String ATOMIC_WRITES = "restolino.atomicwrites";
+    public static final String FORCE_WRITES = "restolino.forcewrites";
+    public static final String CROSS_PROCESS_LOCKS = "restolino.crossprocesslocks";
+    public static final String JSON_CACHE_SIZE = "restolino.jsoncachesize";
+    public static final String JSON_CACHE_WATCH = "restolino.jsoncachewatch";
+    public static final String JSON_CACHE_COPY = "restolino.jsoncachecopy";
+    public static final String MAP_THRESHOLD = "restolino.mapthreshold";
+    public static final String BULK_THREADS = "restolino.bulkthreads";
+    public static final String COMPRESS = "restolino.compress";
+    public static final String WRITE_BEHIND = "restolino.writebehind";
 
     public static final String JETTY_REQUEST_HEADER_SIZE = "JETTY_REQUEST_HEADER_SIZE";
 
@@ -77,6 +103,16 @@ public class Configuration {
      */
     public URL classesUrl;
 
+    /**
+     * If set, a file URL for your application jar. Its classes are loaded in a
+     * class loader of their own, and replacing the jar deploys the new version
+     * without a restart (see
+     * {@link com.github.davidcarboni.restolino.reload.JarDeployer}). The jar
+     * must not also be on the classpath. Ignored if classes are being reloaded
+     * from a directory. ({@value #DEPLOY})
+     */
+    public URL deployUrl;
+
     /**
      * If classes will be dynamically reloaded, the package prefix to scan. This
      * is optional but, if set, it avoids scanning all classes in all
@@ -85,6 +121,74 @@ public class Configuration {
      */
     public String packagePrefix;
 
+    /**
+     * If false, any class index written at compile time by
+     * {@link com.github.davidcarboni.restolino.reload.IndexProcessor} is
+     * ignored and the classpath is scanned instead. Defaults to true.
+     * ({@value #CLASS_INDEX})
+     */
+    public boolean classIndex = true;
+
+    /**
+     * How to scan the classpath when there's no class index: "bytecode" (the
+     * default) reads just the superclass, interfaces and annotations of each
+     * class file, in parallel, or "reflections" uses a full Reflections scan.
+     * Both find the same classes. ({@value #SCANNER})
+     */
+    public String scanner = "bytecode";
+
+    /**
+     * When reloading classes, how long, in milliseconds, to wait for changes
+     * to stop before reloading, so a compile only triggers one reload.
+     * Defaults to 200. ({@value #RELOAD_QUIET})
+     */
+    public long reloadQuietMillis = 200;
+
+    /**
+     * How many times to send each warm-up request (see
+     * {@link com.github.davidcarboni.restolino.framework.WarmUp}) before the
+     * server starts accepting traffic. Zero turns warm-up off. Defaults to
+     * 10000. ({@value #WARM_UP_ITERATIONS})
+     */
+    public int warmUpIterations = 10000;
+
+    /**
+     * The most time, in milliseconds, to spend on warm-up. Defaults to 10000.
+     * ({@value #WARM_UP_MILLIS})
+     */
+    public long warmUpMillis = 10000;
+
+    /**
+     * If true, the server starts, sends any warm-up requests, then stops and
+     * exits. This is a training run for class data sharing: run it with
+     * <code>-XX:ArchiveClassesAtExit</code> (or <code>-XX:DumpLoadedClassList</code>)
+     * to record the classes a real start loads. ({@value #TRAINING})
+     */
+    public boolean training;
+
+    /**
+     * On shutdown, how long, in milliseconds, to keep serving after
+     * <code>/readyz</code> starts reporting not ready, so load balancers stop
+     * sending requests before the server stops accepting them. Set it to
+     * cover your load balancer's health check interval times its failure
+     * threshold. Defaults to zero. ({@value #DRAIN_GRACE})
+     */
+    public long drainGraceMillis;
+
+    /**
+     * On shutdown, once the server has stopped accepting requests, the most
+     * time, in milliseconds, to wait for requests in flight to finish.
+     * Defaults to 30000. ({@value #STOP_TIMEOUT})
+     */
+    public long stopTimeoutMillis = 30000;
+
+    /**
+     * The number of threads used to run {@link com.github.davidcarboni.restolino.framework.Startup}
+     * classes that share a {@link com.github.davidcarboni.restolino.framework.Priority}.
+     * Defaults to the number of processors. ({@value #STARTUP_THREADS})
+     */
+    public int startupThreads = Runtime.getRuntime().availableProcessors();
+
     /**
      * Whether authentication has been enabled, by setting at least
      * {@value #AUTH_USERNAME}.
@@ -119,6 +223,97 @@ public class Configuration {
      */
     public int jettyRequestHeaderSize = 8192;
 
+    /**
+     * The Json engine used by {@link com.github.davidcarboni.restolino.json.Serialiser}:
+     * "gson" (the default), "jackson", or the class name of a
+     * {@link com.github.davidcarboni.restolino.json.JsonEngine} implementation.
+     * ({@value #JSON_ENGINE})
+     */
+    public String jsonEngine = "gson";
+
+    /**
+     * Json responses up to this many bytes are buffered and sent with a
+     * <code>Content-Length</code>; larger ones are streamed. Zero disables
+     * buffering. ({@value #RESPONSE_BUFFER})
+     */
+    public int responseBufferSize = 1024 * 1024;
+
+    /**
+     * The largest Json request body, in bytes, that will be deserialised.
+     * Larger requests get a 413 response. Zero means no limit.
+     * ({@value #MAX_REQUEST_SIZE})
+     */
+    public long maxRequestSize;
+
+    /**
+     * Binary encodings ("cbor", "smile") that clients can ask for instead of
+     * Json, using <code>Accept</code> and <code>Content-Type</code> headers.
+     * Json is always available and remains the default. ({@value #ENCODINGS})
+     */
+    public List<String> encodings = new ArrayList<>();
+
+    /**
+     * If true, Json files are written to a temp file and renamed into place,
+     * so readers never see partial content. ({@value #ATOMIC_WRITES})
+     */
+    public boolean atomicWrites;
+
+    /**
+     * If true, atomic Json file writes are forced to disk before being
+     * renamed into place. ({@value #FORCE_WRITES})
+     */
+    public boolean forceWrites;
+
+    /**
+     * If false, Json file access is only locked within this JVM and OS file
+     * locks aren't taken. Defaults to true. ({@value #CROSS_PROCESS_LOCKS})
+     */
+    public boolean crossProcessLocks = true;
+
+    /**
+     * The maximum total size, in bytes, of Json files to cache when reading
+     * them with {@link com.github.davidcarboni.restolino.json.Serialiser#deserialise(Path, Class)}.
+     * Zero (the default) means no cache. ({@value #JSON_CACHE_SIZE})
+     */
+    public long jsonCacheSize;
+
+    /**
+     * A directory to watch so that cached Json files are dropped as soon as
+     * they change on disk. ({@value #JSON_CACHE_WATCH})
+     */
+    public String jsonCacheWatch;
+
+    /**
+     * If true, each read of a cached Json file gets its own copy, so callers
+     * can safely modify it. ({@value #JSON_CACHE_COPY})
+     */
+    public boolean jsonCacheCopy;
+
+    /**
+     * Json files of at least this many bytes are memory-mapped for reading.
+     * Zero (the default) means files are never mapped. ({@value #MAP_THRESHOLD})
+     */
+    public long mapThreshold;
+
+    /**
+     * The number of threads for bulk Json file reads and writes. Zero (the
+     * default) means the common fork-join pool is used. ({@value #BULK_THREADS})
+     */
+    public int bulkThreads;
+
+    /**
+     * If true, all Json files are gzipped when they're written, not just the
+     * ones whose names end in <code>.gz</code>. ({@value #COMPRESS})
+     */
+    public boolean compressWrites;
+
+    /**
+     * If greater than zero, Json files are written behind: only the latest
+     * version of each file is kept and written out at this interval, in
+     * milliseconds. ({@value #WRITE_BEHIND})
+     */
+    public long writeBehind;
+
     @Override
     public String toString() {
 
@@ -138,8 +333,32 @@ public class Configuration {
         result.append("\n - classesReloadable:\t" + classesReloadable);
         result.append("\n - classesInClasspath:\t" + classesInClasspath);
         result.append("\n - classesUrl:\t" + classesUrl);
+        result.append("\n - deployUrl:\t" + deployUrl);
         result.append("\n - packagePrefix:\t" + packagePrefix);
+        result.append("\n - classIndex:\t" + classIndex);
+        result.append("\n - scanner:\t" + scanner);
+        result.append("\n - reloadQuietMillis:\t" + reloadQuietMillis);
+        result.append("\n - warmUpIterations:\t" + warmUpIterations);
+        result.append("\n - warmUpMillis:\t" + warmUpMillis);
+        result.append("\n - training:\t" + training);
+        result.append("\n - drainGraceMillis:\t" + drainGraceMillis);
+        result.append("\n - stopTimeoutMillis:\t" + stopTimeoutMillis);
+        result.append("\n - startupThreads:\t" + startupThreads);
         result.append("\n - jettyRequestHeaderSize:\t" + jettyRequestHeaderSize);
+        result.append("\n - jsonEngine:\t" + jsonEngine);
+        result.append("\n - responseBufferSize:\t" + responseBufferSize);
+        result.append("\n - maxRequestSize:\t" + maxRequestSize);
+        result.append("\n - encodings:\t" + encodings);
+        result.append("\n - atomicWrites:\t" + atomicWrites);
+        result.append("\n - forceWrites:\t" + forceWrites);
+        result.append("\n - crossProcessLocks:\t" + crossProcessLocks);
+        result.append("\n - jsonCacheSize:\t" + jsonCacheSize);
+        result.append("\n - jsonCacheWatch:\t" + jsonCacheWatch);
+        result.append("\n - jsonCacheCopy:\t" + jsonCacheCopy);
+        result.append("\n - mapThreshold:\t" + mapThreshold);
+        result.append("\n - bulkThreads:\t" + bulkThreads);
+        result.append("\n - compressWrites:\t" + compressWrites);
+        result.append("\n - writeBehind:\t" + writeBehind);
 
         // Basic authentication
         result.append("\nBasic Auth:");
@@ -180,6 +399,48 @@ public class Configuration {
         configureClasses(classes);
         configureAuthentication(username, password, realm);
         configureJettyRequestHeaderSize(requestHeaderSize);
+        configureJson();
+        configureWarmUp();
+        configureShutdown();
+    }
+
+    /**
+     * Configures graceful shutdown.
+     */
+    void configureShutdown() {
+        drainGraceMillis = getLong(DRAIN_GRACE, drainGraceMillis);
+        stopTimeoutMillis = getLong(STOP_TIMEOUT, stopTimeoutMillis);
+    }
+
+    /**
+     * Configures warm-up before the server accepts traffic, and training runs.
+     */
+    void configureWarmUp() {
+        warmUpIterations = getInt(WARM_UP_ITERATIONS, warmUpIterations);
+        warmUpMillis = getLong(WARM_UP_MILLIS, warmUpMillis);
+        training = Boolean.parseBoolean(getValue(TRAINING));
+    }
+
+    /**
+     * Configures Json serialisation.
+     */
+    void configureJson() {
+        jsonEngine = StringUtils.defaultIfBlank(getValue(JSON_ENGINE), jsonEngine);
+        responseBufferSize = getInt(RESPONSE_BUFFER, responseBufferSize);
+        maxRequestSize = getLong(MAX_REQUEST_SIZE, maxRequestSize);
+        for (String encoding : StringUtils.split(StringUtils.defaultString(getValue(ENCODINGS)), ", ")) {
+            encodings.add(StringUtils.lowerCase(encoding));
+        }
+        atomicWrites = Boolean.parseBoolean(getValue(ATOMIC_WRITES));
+        forceWrites = Boolean.parseBoolean(getValue(FORCE_WRITES));
+        crossProcessLocks = !StringUtils.equalsIgnoreCase(getValue(CROSS_PROCESS_LOCKS), "false");
+        jsonCacheSize = getLong(JSON_CACHE_SIZE, 0);
+        jsonCacheWatch = getValue(JSON_CACHE_WATCH);
+        jsonCacheCopy = Boolean.parseBoolean(getValue(JSON_CACHE_COPY));
+        mapThreshold = getLong(MAP_THRESHOLD, 0);
+        bulkThreads = getInt(BULK_THREADS, 0);
+        compressWrites = Boolean.parseBoolean(getValue(COMPRESS));
+        writeBehind = getLong(WRITE_BEHIND, 0);
     }
 
     /**
@@ -266,7 +527,12 @@ public class Configuration {
             configureClassesReloadable(path);
         }
         packagePrefix = getValue(PACKAGE_PREFIX);
+        classIndex = !StringUtils.equalsIgnoreCase(getValue(CLASS_INDEX), "false");
+        scanner = StringUtils.defaultIfBlank(getValue(SCANNER), scanner);
+        reloadQuietMillis = getLong(RELOAD_QUIET, reloadQuietMillis);
+        startupThreads = getInt(STARTUP_THREADS, startupThreads);
         classesReloadable = classesUrl != null && classesInClasspath == null;
+        configureDeploy(getValue(DEPLOY));
 
         // Communicate:
         showClassesConfiguration();
@@ -403,6 +669,22 @@ public class Configuration {
         }
     }
 
+    /**
+     * Sets up deploying the application from a jar.
+     *
+     * @param path The application jar. This will be monitored for changes.
+     */
+    void configureDeploy(String path) {
+
+        if (StringUtils.isNotBlank(path) && !classesReloadable) {
+            try {
+                deployUrl = FileSystems.getDefault().getPath(path).toAbsolutePath().toUri().toURL();
+            } catch (IOException e) {
+                throw new RuntimeException("Error setting up deployment from " + path, e);
+            }
+        }
+    }
+
     /**
      * Prints out a message confirming the static file serving configuration.
      */
@@ -438,12 +720,51 @@ public class Configuration {
             } else {
                 message = "Classes will be reloaded from package " + packagePrefix + " at: " + classesUrl;
             }
+        } else if (deployUrl != null) {
+            message = "Classes will be deployed from: " + deployUrl;
         } else {
             message = "Classes will not be dynamically reloaded.";
         }
         log.info("Classes: {}", message);
     }
 
+    /**
+     * Gets a configured integer value, failing gracefully if it can't be parsed.
+     *
+     * @param key          The name of the configuration value.
+     * @param defaultValue The value to use if none is set, or it can't be parsed.
+     * @return The configured value, or the default.
+     */
+    static int getInt(String key, int defaultValue) {
+        long result = getLong(key, defaultValue);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            log.info("{} ({}) is out of range. Defaulting to {}", key, result, defaultValue);
+            return defaultValue;
+        }
+        return (int) result;
+    }
+
+    /**
+     * Gets a configured long value, failing gracefully if it can't be parsed.
+     *
+     * @param key          The name of the configuration value.
+     * @param defaultValue The value to use if none is set, or it can't be parsed.
+     * @return The configured value, or the default.
+     */
+    static long getLong(String key, long defaultValue) {
+        String value = getValue(key);
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                long result = Long.parseLong(value.trim());
+                log.info("Using {} {}", key, result);
+                return result;
+            } catch (NumberFormatException e) {
+                log.info("Unable to parse {} ({}). Defaulting to {}", key, value, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Gets a configured value for the given key from either the system
      * properties or an environment variable.
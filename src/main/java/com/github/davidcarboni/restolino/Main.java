@@ -1,11 +1,16 @@
 package com.github.davidcarboni.restolino;
 
 import com.github.davidcarboni.restolino.jetty.BasicAuth;
+import com.github.davidcarboni.restolino.jetty.HealthHandler;
 import com.github.davidcarboni.restolino.jetty.MainHandler;
+import com.github.davidcarboni.restolino.jetty.WarmUpRunner;
+import com.github.davidcarboni.restolino.json.Serialiser;
 import com.github.davidcarboni.restolino.reload.ClassReloader;
+import com.github.davidcarboni.restolino.reload.JarDeployer;
 import org.eclipse.jetty.security.SecurityHandler;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.StatisticsHandler;
@@ -39,19 +44,23 @@ public class Main {
      * >https://bugs.eclipse.org/bugs/show_bug.cgi?id=420142</a>
      */
     public static StatisticsHandler statisticsHandler;
+    /**
+     * Readiness and liveness checks, and draining on shutdown.
+     */
+    public static HealthHandler healthHandler;
 
     public static void main(String[] args) throws Exception {
 
         try {
             // Set up the configuration
             configuration = new Configuration();
+            Serialiser.configure(configuration);
 
             // Create the Jetty server
             QueuedThreadPool qtp = new QueuedThreadPool(configuration.maxThreads);
             org.eclipse.jetty.server.Server server = new Server(qtp);
             ServerConnector http = new ServerConnector(server, new HttpConnectionFactory());
             http.setPort(configuration.port);
-            server.addConnector(http);
             configureRequestHeaderSize(http, configuration.jettyRequestHeaderSize);
 
             // Create the handlers
@@ -69,16 +78,21 @@ public class Main {
                 handler = gzipHandler;
             }
 
+            // Health checks, outside authentication:
+            healthHandler = new HealthHandler();
+            healthHandler.setHandler(handler);
+
             // Graceful shutdown
             statisticsHandler = new StatisticsHandler();
-            statisticsHandler.setHandler(handler);
+            statisticsHandler.setHandler(healthHandler);
             server.setHandler(statisticsHandler);
+            server.setStopTimeout(configuration.stopTimeoutMillis);
             Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
                 @Override
                 public void run() {
                     try {
                         log.info("Initiating graceful shutdown...");
-                        //server.getHandler().stop();
+                        drain();
                         server.stop();
                         log.info("Shutdown completed gracefully.");
                     } catch (Exception e) {
@@ -89,14 +103,68 @@ public class Main {
             }));
 
             // And we're good to go
-            server.start();
+            start(server, http);
+            healthHandler.ready();
             log.info("configuration {}", configuration);
             log.info("Completed startup process.");
+
+            if (configuration.training) {
+                // Exit so the JVM writes out the classes that were loaded:
+                log.info("Training run complete. Stopping.");
+                server.stop();
+                ClassReloader.shutdown();
+                JarDeployer.shutdown();
+                System.exit(0);
+            }
             server.join();
 
         } finally {
             ClassReloader.shutdown();
+            JarDeployer.shutdown();
+        }
+    }
+
+    /**
+     * Starts the server. If there are warm-up requests (see {@link WarmUpRunner}),
+     * they're sent through a local connector first and the Http connector is
+     * only started once they're done, so no traffic arrives before then.
+     */
+    private static void start(Server server, ServerConnector http) throws Exception {
+        WarmUpRunner warmUp = mainHandler.newWarmUpRunner();
+        if (warmUp.hasRequests() && !configuration.classesReloadable) {
+            LocalConnector local = new LocalConnector(server);
+            server.addConnector(local);
+            server.start();
+            try {
+                warmUp.run(local);
+            } catch (Exception e) {
+                log.warn("Error during warm-up. Starting anyway.", e);
+            }
+            server.removeConnector(local);
+            local.stop();
+
+            server.addConnector(http);
+            server.manage(http);
+            http.start();
+        } else {
+            server.addConnector(http);
+            server.start();
+        }
+    }
+
+    /**
+     * Reports not ready, then keeps serving for the drain grace period so load
+     * balancers can stop routing requests here before the server stops
+     * accepting them. {@link Server#stop()} then waits up to the stop timeout
+     * for requests in flight.
+     */
+    private static void drain() throws InterruptedException {
+        healthHandler.drain();
+        if (configuration.drainGraceMillis > 0) {
+            log.info("Serving for another {}ms while load balancers catch up", configuration.drainGraceMillis);
+            Thread.sleep(configuration.drainGraceMillis);
         }
+        log.info("Stopping. Waiting up to {}ms for requests in flight", configuration.stopTimeoutMillis);
     }
 
     private static void configureRequestHeaderSize(ServerConnector connector, int headerSize) {
@@ -5,6 +5,7 @@ import com.github.davidcarboni.restolino.routes.DefaultApiDocumentation;
 import com.github.davidcarboni.restolino.routes.DefaultNotFound;
 import com.github.davidcarboni.restolino.routes.DefaultServerError;
 import com.github.davidcarboni.restolino.helpers.Path;
+import com.github.davidcarboni.restolino.json.PayloadTooLargeException;
 import com.github.davidcarboni.restolino.json.Serialiser;
 import org.apache.commons.lang3.StringUtils;
 import org.reflections.Reflections;
@@ -304,7 +305,7 @@ public class Router {
             // Handle a / request:
             Object responseMessage = home.get(request, response);
             if (responseMessage != null) {
-                Serialiser.serialise(response, responseMessage);
+                Serialiser.serialise(request, response, responseMessage);
             }
 
         } catch (Throwable t) {
@@ -355,7 +356,7 @@ public class Router {
         RequestHandler requestHandler = route.requestHandlers.get(httpMethod);
         Object responseMessage = invoke(request, response, handler, requestHandler.handlerMethod, requestHandler.requestMessageType);
         if (requestHandler.responseMessageType != null && responseMessage != null) {
-            Serialiser.serialise(response, responseMessage);
+            Serialiser.serialise(request, response, responseMessage);
         }
     }
 
@@ -376,21 +377,25 @@ public class Router {
         // Attempt to handle the not-found:
         Object notFoundResponse = notFound.handle(request, response);
         if (notFoundResponse != null) {
-            Serialiser.serialise(response, notFoundResponse);
+            Serialiser.serialise(request, response, notFoundResponse);
         }
     }
 
     private void handleError(HttpServletRequest request, HttpServletResponse response, RequestHandler requestHandler, Throwable t) {
 
         // Set a default response code:
-        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        if (t instanceof PayloadTooLargeException) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        } else {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
 
         try {
 
             // Attempt to handle the error gracefully:
             Object errorResponse = serverError.handle(request, response, requestHandler, t);
             if (errorResponse != null) {
-                Serialiser.serialise(response, errorResponse);
+                Serialiser.serialise(request, response, errorResponse);
             }
 
         } catch (Throwable t2) {
@@ -0,0 +1,19 @@
+package com.github.davidcarboni.restolino.framework;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link Startup} as needing other {@link Startup} classes to have
+ * finished before it runs, in addition to any ordering given by
+ * {@link Priority}. Startups that share a {@link Priority} value run in
+ * parallel, so use this when one of them needs another.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DependsOn {
+
+    Class<? extends Startup>[] value();
+}
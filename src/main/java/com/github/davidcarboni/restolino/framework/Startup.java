@@ -15,10 +15,15 @@ package com.github.davidcarboni.restolino.framework;
  * invocation will be in a new classloader, so approaches like static fields
  * won't work because they will effectively reset.
  * <p>
+ * Startups run in {@link Priority} order. Those that share a {@link Priority}
+ * value run in parallel, so use {@link DependsOn} if one needs another to have
+ * finished first. Startups without a {@link Priority} run one at a time.
+ * <p>
  * If you need to throw a checked exception, wrap it in an unchecked exception.
- * Anything thrown will be logged to the console, but won't halt the
- * application, on the basis that in development you might need to go through
- * quite a number of iterations.
+ * Anything thrown stops any startups that haven't begun yet and is logged to
+ * the console. When reloading, it won't halt the application, on the basis
+ * that in development you might need to go through quite a number of
+ * iterations.
  *
  * @author david
  */
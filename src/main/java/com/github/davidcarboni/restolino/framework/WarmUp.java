@@ -0,0 +1,31 @@
+package com.github.davidcarboni.restolino.framework;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an {@link Api} method to be called repeatedly before the server starts
+ * accepting traffic, so that it's been compiled by the JIT before real
+ * requests arrive.
+ * <p>
+ * Warm-up requests go through the whole handler chain, just like real ones,
+ * so only use this on methods that are safe to call many times (e.g. reads).
+ * You can also list requests in a <code>META-INF/restolino/warmup</code>
+ * resource, one per line: the Http method, the path and, optionally, a Json body.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface WarmUp {
+
+    /**
+     * @return Anything to add to the endpoint path, e.g. <code>/123</code>.
+     */
+    String path() default "";
+
+    /**
+     * @return The Json request body, if the method takes a request message.
+     */
+    String body() default "";
+}
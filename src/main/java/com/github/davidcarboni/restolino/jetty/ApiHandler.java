@@ -34,6 +34,14 @@ public class ApiHandler extends AbstractHandler {
 
     @Override
     public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        handle(api, request, response);
+    }
+
+    /**
+     * Routes the request to the given {@link Router}, so a request keeps using
+     * the one it started with if classes are reloaded part way through.
+     */
+    static void handle(Router api, HttpServletRequest request, HttpServletResponse response) {
         String method = request.getMethod();
         if (StringUtils.equals("GET", method)) {
             api.get(request, response);
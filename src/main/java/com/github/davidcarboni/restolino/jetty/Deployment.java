@@ -0,0 +1,135 @@
+package com.github.davidcarboni.restolino.jetty;
+
+import com.github.davidcarboni.restolino.api.Router;
+import com.github.davidcarboni.restolino.framework.PostFilter;
+import com.github.davidcarboni.restolino.framework.PreFilter;
+import com.github.davidcarboni.restolino.framework.Startup;
+import com.github.davidcarboni.restolino.json.Serialiser;
+import com.github.davidcarboni.restolino.reload.ClassFinder;
+import com.github.davidcarboni.restolino.reload.JarDeployer;
+import org.reflections.Reflections;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Everything that's built from one set of classes: the {@link Router},
+ * filters and startups, and the class loader they came from.
+ * <p>
+ * {@link MainHandler} publishes a fully built deployment in one go. Each
+ * request {@link #acquire()}s the current one, so when a reload replaces it,
+ * the old one is only closed once the requests using it have finished. Closing
+ * purges the old classes from {@link Serialiser}'s caches and closes the class
+ * loader, so it can be garbage collected. Any staged jar it was loading from
+ * (see {@link JarDeployer}) is deleted.
+ */
+class Deployment {
+
+    private static final Logger log = getLogger(Deployment.class);
+
+    final Router router;
+    // Not final so MainHandler's deprecated setup methods can still replace them:
+    volatile List<PreFilter> preFilters;
+    volatile List<PostFilter> postFilters;
+    volatile List<Startup> startups;
+    private final URLClassLoader classLoader;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean retired;
+
+    /**
+     * Builds the router and filters and runs the startups.
+     *
+     * @param reflections Where to find the classes.
+     * @throws RuntimeException If a startup fails. The class loader is closed before this is thrown.
+     */
+    Deployment(Reflections reflections) {
+        classLoader = ClassFinder.getReloadableClassLoader(reflections);
+        try {
+            router = new Router(reflections);
+            preFilters = MainHandler.getPreFilters(reflections);
+            postFilters = MainHandler.getPostFilters(reflections);
+            startups = MainHandler.runStartUpsOrdered(reflections);
+        } catch (RuntimeException | Error e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Marks the start of a request.
+     *
+     * @return If this deployment can be used, true. If it's been retired, false,
+     * in which case the caller should get the current one and try again.
+     */
+    boolean acquire() {
+        inFlight.incrementAndGet();
+        if (retired) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks the end of a request. If this deployment has been retired and this was
+     * the last request using it, it's closed.
+     */
+    void release() {
+        if (inFlight.decrementAndGet() == 0 && retired) {
+            close();
+        }
+    }
+
+    /**
+     * Called when this deployment has been replaced. It's closed as soon as
+     * there are no requests using it.
+     */
+    void retire() {
+        retired = true;
+        if (inFlight.get() == 0) {
+            close();
+        }
+    }
+
+    /**
+     * @return The number of requests currently using this deployment.
+     */
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return The class loader the classes were loaded from, or null if they're on the classpath.
+     */
+    URLClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * @return If this deployment has been closed, true.
+     */
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    private void close() {
+        if (closed.compareAndSet(false, true) && classLoader != null) {
+            Serialiser.purge(classLoader);
+            try {
+                classLoader.close();
+                log.info("Closed class loader {}", classLoader);
+            } catch (IOException e) {
+                log.info("Error closing class loader {}", classLoader, e);
+            }
+            JarDeployer.unstage(classLoader);
+        }
+    }
+}
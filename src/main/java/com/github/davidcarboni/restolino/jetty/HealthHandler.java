@@ -0,0 +1,94 @@
+package com.github.davidcarboni.restolino.jetty;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Answers load balancer and orchestrator health checks, ahead of
+ * authentication and everything else:
+ * <ul>
+ * <li>{@value #LIVE} is 200 as long as the server is handling requests.</li>
+ * <li>{@value #READY} is 200 once startup and warm-up have finished, and 503
+ * before that and once the server starts {@link #drain() draining}.</li>
+ * </ul>
+ * While draining, other requests are still handled, but responses carry
+ * <code>Connection: close</code> so clients don't keep idle connections open to
+ * a server that's about to stop.
+ */
+public class HealthHandler extends HandlerWrapper {
+
+    private static final Logger log = getLogger(HealthHandler.class);
+
+    public static final String READY = "/readyz";
+    public static final String LIVE = "/livez";
+
+    private volatile boolean ready;
+    private volatile boolean draining;
+
+    /**
+     * Called once the server has started and warmed up.
+     */
+    public void ready() {
+        ready = true;
+        log.info("Ready");
+    }
+
+    /**
+     * Starts reporting not ready and closing connections after each response.
+     */
+    public void drain() {
+        draining = true;
+        log.info("Draining: {} now reports not ready", READY);
+    }
+
+    /**
+     * @return If the server is ready for traffic, true.
+     */
+    public boolean isReady() {
+        return ready && !draining;
+    }
+
+    /**
+     * @return If {@link #drain()} has been called, true.
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        if (READY.equals(target)) {
+            boolean isReady = isReady();
+            respond(baseRequest, response, isReady ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE, isReady ? "ready" : "not ready");
+        } else if (LIVE.equals(target)) {
+            respond(baseRequest, response, HttpServletResponse.SC_OK, "live");
+        } else {
+            if (draining) {
+                response.setHeader(HttpHeader.CONNECTION.asString(), HttpHeaderValue.CLOSE.asString());
+            }
+            super.handle(target, baseRequest, request, response);
+        }
+    }
+
+    private void respond(Request baseRequest, HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MimeTypes.Type.TEXT_PLAIN_UTF_8.asString());
+        response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-store");
+        if (draining) {
+            response.setHeader(HttpHeader.CONNECTION.asString(), HttpHeaderValue.CLOSE.asString());
+        }
+        response.getWriter().println(message);
+        baseRequest.setHandled(true);
+    }
+}
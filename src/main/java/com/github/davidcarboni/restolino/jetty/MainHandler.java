@@ -7,11 +7,15 @@ import com.github.davidcarboni.restolino.framework.PriorityComparator;
 import com.github.davidcarboni.restolino.framework.Startup;
 import com.github.davidcarboni.restolino.reload.ClassFinder;
 import com.github.davidcarboni.restolino.reload.ClassReloader;
+import com.github.davidcarboni.restolino.reload.JarDeployer;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.util.resource.Resource;
@@ -24,8 +28,8 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -44,9 +48,11 @@ public class MainHandler extends HandlerCollection {
 
     ResourceHandler filesHandler;
     ApiHandler apiHandler;
-    Collection<PreFilter> preFilters;
-    Collection<PostFilter> postFilters;
-    Collection<Startup> startups;
+    volatile Deployment deployment;
+
+    // A new version that's being warmed up before it's swapped in, and the connector its warm-up requests arrive on:
+    volatile Deployment candidate;
+    volatile Connector candidateConnector;
 
     public MainHandler() throws IOException {
 
@@ -66,14 +72,15 @@ public class MainHandler extends HandlerCollection {
         }
         setHandlers(handlers.toArray(new Handler[0]));
 
-        // "meta-handling"
-        setupPreFilters(reflections);
-        setupPostFilters(reflections);
-        runStartups(reflections);
+        // Api, "meta-handling" and startups:
+        deployment = new Deployment(reflections);
+        ApiHandler.api = deployment.router;
 
         // Class reloading
         if (Main.configuration.classesReloadable) {
             ClassReloader.start(System.getProperty("restolino.classes"));
+        } else if (Main.configuration.deployUrl != null) {
+            JarDeployer.start();
         }
     }
 
@@ -118,26 +125,143 @@ public class MainHandler extends HandlerCollection {
 
     private void setupApiHandler(Reflections reflections) {
         apiHandler = new ApiHandler();
-        ApiHandler.setupApi(reflections);
     }
 
     public void reload() throws IOException {
+        reload(ClassFinder.newReflections());
+    }
 
-        Reflections reflections = ClassFinder.newReflections();
+    /**
+     * Builds the api, filters and startups from the given classes and, if that
+     * succeeds, swaps them in for the current ones. The old ones are retired
+     * once the requests using them have finished.
+     *
+     * @param reflections Where to find the reloaded classes.
+     */
+    public void reload(Reflections reflections) {
+        Deployment next = build(reflections);
+        if (next != null) {
+            publish(next);
+        }
+    }
+
+    /**
+     * Like {@link #reload(Reflections)}, but for a production deploy: once the
+     * new version has been built, its warm-up requests are sent to it while the
+     * current version carries on serving, and only then is it swapped in.
+     *
+     * @param reflections Where to find the deployed classes.
+     * @return If the new version was swapped in, true.
+     */
+    public boolean deploy(Reflections reflections) {
+        Deployment next = build(reflections);
+        if (next == null) {
+            // Nothing will use the new version's class loader or its staged jar:
+            URLClassLoader classLoader = ClassFinder.getReloadableClassLoader(reflections);
+            if (classLoader != null) {
+                ClassFinder.discard(classLoader);
+            }
+            return false;
+        }
+        warmUp(next);
+        publish(next);
+
+        // Serve static files from the new version too:
+        URL url = getFilesUrl(reflections);
+        if (filesHandler != null && url != null && !Main.configuration.filesReloadable) {
+            filesHandler.setBaseResource(Resource.newResource(url));
+        }
+        return true;
+    }
+
+    /**
+     * @return A {@link WarmUpRunner} for the current deployment.
+     */
+    public WarmUpRunner newWarmUpRunner() {
+        return new WarmUpRunner(deployment.router, Main.configuration, deployment.getClassLoader());
+    }
+
+    private Deployment build(Reflections reflections) {
+        try {
+            return new Deployment(reflections);
+        } catch (RuntimeException e) {
+            log.error("Error setting up reloaded classes. Keeping the previous version.", e);
+            return null;
+        }
+    }
+
+    private void publish(Deployment next) {
+        Deployment previous = deployment;
+        deployment = next;
+        ApiHandler.api = next.router;
+        previous.retire();
+    }
+
+    /**
+     * Sends warm-up requests through the whole handler chain on a local
+     * connector. {@link #handle} passes requests from that connector to the
+     * candidate deployment rather than the current one.
+     */
+    private void warmUp(Deployment next) {
+        WarmUpRunner warmUp = new WarmUpRunner(next.router, Main.configuration, next.getClassLoader());
+        Server server = getServer();
+        if (!warmUp.hasRequests() || server == null || !server.isStarted()) {
+            return;
+        }
+
+        LocalConnector local = new LocalConnector(server);
+        candidateConnector = local;
+        candidate = next;
+        try {
+            server.addConnector(local);
+            local.start();
+            warmUp.run(local);
+        } catch (Exception e) {
+            log.warn("Error during warm-up. Deploying anyway.", e);
+        } finally {
+            candidate = null;
+            candidateConnector = null;
+            server.removeConnector(local);
+            try {
+                local.stop();
+            } catch (Exception e) {
+                log.info("Error stopping the warm-up connector", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the deployment for a request: the candidate, if the request is a
+     * warm-up for it, otherwise the current one.
+     */
+    Deployment acquire(Request baseRequest) {
+        Deployment next = candidate;
+        if (next != null && baseRequest.getHttpChannel() != null
+                && baseRequest.getHttpChannel().getConnector() == candidateConnector && next.acquire()) {
+            return next;
+        }
+        return acquire();
+    }
 
-        ApiHandler.setupApi(reflections);
-        setupPreFilters(reflections);
-        setupPostFilters(reflections);
-        runStartups(reflections);
+    /**
+     * Gets the current deployment for a request. Call {@link Deployment#release()} when the request is done.
+     */
+    Deployment acquire() {
+        Deployment current;
+        do {
+            current = deployment;
+        } while (!current.acquire());
+        return current;
     }
 
     @Override
     public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
 
+        Deployment deployment = acquire(baseRequest);
         try {
-            if (preFilter(request, response)) {
+            if (preFilter(deployment, request, response)) {
                 if (isApiRequest(target)) {
-                    apiHandler.handle(target, baseRequest, request, response);
+                    ApiHandler.handle(deployment.router, request, response);
                 } else if (filesHandler != null) {
                     filesHandler.handle(target, baseRequest, request, response);
                     if (!baseRequest.isHandled()) {
@@ -148,7 +272,11 @@ public class MainHandler extends HandlerCollection {
                 }
             }
         } finally {
-            postFilters.stream().forEach(pf -> pf.filter(request, response));
+            try {
+                deployment.postFilters.stream().forEach(pf -> pf.filter(request, response));
+            } finally {
+                deployment.release();
+            }
         }
 
         baseRequest.setHandled(true);
@@ -159,9 +287,9 @@ public class MainHandler extends HandlerCollection {
         return StringUtils.isBlank(extension);
     }
 
-    boolean preFilter(HttpServletRequest req, HttpServletResponse res) {
+    static boolean preFilter(Deployment deployment, HttpServletRequest req, HttpServletResponse res) {
         boolean result = true;
-        for (PreFilter preFilter : preFilters) {
+        for (PreFilter preFilter : deployment.preFilters) {
             result &= preFilter.filter(req, res);
         }
         return result;
@@ -173,7 +301,40 @@ public class MainHandler extends HandlerCollection {
         response.getWriter().println("Not found: " + target);
     }
 
+    /**
+     * Replaces the current version's filters without swapping in a new version.
+     *
+     * @param reflections Where to find the filter classes.
+     * @deprecated Use {@link #reload(Reflections)}, which swaps the api, filters and startups in together.
+     */
+    @Deprecated
     public void setupPreFilters(Reflections reflections) {
+        deployment.preFilters = getPreFilters(reflections);
+    }
+
+    /**
+     * Replaces the current version's post-filters without swapping in a new version.
+     *
+     * @param reflections Where to find the post-filter classes.
+     * @deprecated Use {@link #reload(Reflections)}, which swaps the api, filters and startups in together.
+     */
+    @Deprecated
+    public void setupPostFilters(Reflections reflections) {
+        deployment.postFilters = getPostFilters(reflections);
+    }
+
+    /**
+     * Runs the startups and records them against the current version.
+     *
+     * @param reflections Where to find the startup classes.
+     * @deprecated Use {@link #reload(Reflections)}, which swaps the api, filters and startups in together.
+     */
+    @Deprecated
+    public void runStartups(Reflections reflections) {
+        deployment.startups = runStartUpsOrdered(reflections);
+    }
+
+    static List<PreFilter> getPreFilters(Reflections reflections) {
         List<PreFilter> sortedPreFilters = new ArrayList<>();
         Set<Class<? extends PreFilter>> filterClasses = reflections.getSubTypesOf(PreFilter.class);
         for (Class<? extends PreFilter> filterClass : filterClasses) {
@@ -188,13 +349,13 @@ public class MainHandler extends HandlerCollection {
         }
 
         Collections.sort(sortedPreFilters, new PriorityComparator(sortedPreFilters.size()));
-        preFilters = sortedPreFilters;
         log.info("registered Filter classes {} ",
-                preFilters.stream().map(f -> f.getClass().getSimpleName()).collect(Collectors.toList()));
+                sortedPreFilters.stream().map(f -> f.getClass().getSimpleName()).collect(Collectors.toList()));
+        return sortedPreFilters;
     }
 
 
-    public void setupPostFilters(Reflections reflections) {
+    static List<PostFilter> getPostFilters(Reflections reflections) {
         List<PostFilter> sortedPostFilters = new ArrayList<>();
 
         Set<Class<? extends PostFilter>> classes = reflections.getSubTypesOf(PostFilter.class);
@@ -211,16 +372,17 @@ public class MainHandler extends HandlerCollection {
         }
 
         Collections.sort(sortedPostFilters, new PriorityComparator(sortedPostFilters.size()));
-        postFilters = sortedPostFilters;
         log.info("registered  PostFilter classes {}",
-                postFilters.stream().map(f -> f.getClass().getSimpleName()).collect(Collectors.toList()));
+                sortedPostFilters.stream().map(f -> f.getClass().getSimpleName()).collect(Collectors.toList()));
+        return sortedPostFilters;
     }
 
-    public void runStartups(Reflections reflections) {
-        this.startups = getStartUpsOrdered(reflections);
+    static List<Startup> runStartUpsOrdered(Reflections reflections) {
+        List<Startup> startups = getStartUpsOrdered(reflections);
 
         log.info("running Startup classes in priority order: {}", startups);
-        this.startups.stream().forEach(startup -> startup.init());
+        new StartupRunner(startups).run(Main.configuration.startupThreads);
+        return startups;
     }
 
     static List<Startup> getStartUpsOrdered(Reflections reflections) {
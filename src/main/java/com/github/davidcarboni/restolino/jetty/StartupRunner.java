@@ -0,0 +1,193 @@
+package com.github.davidcarboni.restolino.jetty;
+
+import com.github.davidcarboni.restolino.framework.DependsOn;
+import com.github.davidcarboni.restolino.framework.Priority;
+import com.github.davidcarboni.restolino.framework.Startup;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs {@link Startup} classes in the order given by
+ * {@link MainHandler#getStartUpsOrdered}, running those that share an explicit
+ * {@link Priority} value in parallel.
+ * <p>
+ * Each priority level waits for the one before it to finish, and a startup
+ * also waits for anything named in its {@link DependsOn}. Startups without a
+ * {@link Priority} run one at a time, as they always have.
+ * <p>
+ * If a startup fails, the ones that haven't started yet are skipped. Once the
+ * ones already running have finished, the failure is thrown.
+ */
+class StartupRunner {
+
+    private static final Logger log = getLogger(StartupRunner.class);
+
+    private final List<Startup> startups;
+    private final Map<Class<?>, Startup> byClass = new HashMap<>();
+    private final Map<Startup, Collection<Startup>> prerequisites = new HashMap<>();
+    private final Map<Startup, CompletableFuture<Void>> tasks = new HashMap<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param startups The startups, in priority order.
+     * @throws IllegalStateException If a {@link DependsOn} names a startup that wasn't found, or there's a cycle.
+     */
+    StartupRunner(List<Startup> startups) {
+        this.startups = startups;
+        for (Startup startup : startups) {
+            byClass.put(startup.getClass(), startup);
+        }
+
+        // Each startup needs everything in the previous level, plus its explicit dependencies:
+        List<Startup> previous = Collections.emptyList();
+        for (List<Startup> level : levels(startups)) {
+            for (Startup startup : level) {
+                Collection<Startup> needs = new ArrayList<>(previous);
+                DependsOn dependsOn = startup.getClass().getAnnotation(DependsOn.class);
+                if (dependsOn != null) {
+                    for (Class<? extends Startup> type : dependsOn.value()) {
+                        Startup dependency = byClass.get(type);
+                        if (dependency == null) {
+                            throw new IllegalStateException(startup.getClass().getName() + " depends on " + type.getName() + ", which wasn't found");
+                        }
+                        needs.add(dependency);
+                    }
+                }
+                prerequisites.put(startup, needs);
+            }
+            previous = level;
+        }
+
+        // Check before anything starts running:
+        Set<Startup> checked = new HashSet<>();
+        for (Startup startup : startups) {
+            checkCycles(startup, checked, new HashSet<>());
+        }
+    }
+
+    /**
+     * Runs the startups and waits for them to finish.
+     *
+     * @param threads The maximum number of startups to run at once.
+     * @throws RuntimeException The first failure, if a startup failed.
+     */
+    void run(int threads) {
+        if (startups.isEmpty()) {
+            return;
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "Startup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Startup startup : startups) {
+                task(startup, executor);
+            }
+
+            // Wait for everything to settle, failed or not, so nothing is still running when we return:
+            for (CompletableFuture<Void> task : tasks.values()) {
+                try {
+                    task.join();
+                } catch (CompletionException | CancellationException e) {
+                    // Reported below
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Throwable cause = failure.get();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+    }
+
+    private void checkCycles(Startup startup, Set<Startup> checked, Set<Startup> visiting) {
+        if (checked.contains(startup)) {
+            return;
+        }
+        if (!visiting.add(startup)) {
+            throw new IllegalStateException("Startup dependency cycle involving " + startup.getClass().getName());
+        }
+        for (Startup need : prerequisites.get(startup)) {
+            checkCycles(need, checked, visiting);
+        }
+        visiting.remove(startup);
+        checked.add(startup);
+    }
+
+    private CompletableFuture<Void> task(Startup startup, ExecutorService executor) {
+        CompletableFuture<Void> task = tasks.get(startup);
+        if (task == null) {
+            Collection<Startup> needs = prerequisites.get(startup);
+            CompletableFuture<?>[] before = new CompletableFuture<?>[needs.size()];
+            int i = 0;
+            for (Startup need : needs) {
+                before[i++] = task(need, executor);
+            }
+            task = CompletableFuture.allOf(before).thenRunAsync(() -> init(startup), executor);
+            tasks.put(startup, task);
+        }
+        return task;
+    }
+
+    private void init(Startup startup) {
+        if (failure.get() != null) {
+            throw new CancellationException("Skipping " + startup.getClass().getName() + " because an earlier startup failed");
+        }
+        long start = System.nanoTime();
+        try {
+            startup.init();
+            log.info("Startup {} took {}ms", startup.getClass().getName(), (System.nanoTime() - start) / 1000000);
+        } catch (RuntimeException | Error e) {
+            log.error("Startup {} failed after {}ms", startup.getClass().getName(), (System.nanoTime() - start) / 1000000, e);
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Groups consecutive startups that share an explicit {@link Priority}.
+     * Anything without one is in a level of its own.
+     */
+    static List<List<Startup>> levels(List<Startup> startups) {
+        List<List<Startup>> result = new ArrayList<>();
+        Integer current = null;
+        for (Startup startup : startups) {
+            Integer priority = priority(startup);
+            if (priority == null || !priority.equals(current)) {
+                result.add(new ArrayList<>());
+            }
+            result.get(result.size() - 1).add(startup);
+            current = priority;
+        }
+        return result;
+    }
+
+    private static Integer priority(Startup startup) {
+        Priority priority = startup.getClass().getAnnotation(Priority.class);
+        return priority != null && priority.value() > -1 ? priority.value() : null;
+    }
+}
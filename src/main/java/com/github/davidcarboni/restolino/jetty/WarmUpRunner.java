@@ -0,0 +1,182 @@
+package com.github.davidcarboni.restolino.jetty;
+
+import com.github.davidcarboni.restolino.Configuration;
+import com.github.davidcarboni.restolino.api.HttpMethod;
+import com.github.davidcarboni.restolino.api.RequestHandler;
+import com.github.davidcarboni.restolino.api.Route;
+import com.github.davidcarboni.restolino.api.Router;
+import com.github.davidcarboni.restolino.framework.WarmUp;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.util.BufferUtil;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Sends requests through the whole handler chain, using a Jetty
+ * {@link LocalConnector}, before the server starts accepting traffic. This
+ * gives the JIT a chance to compile the request path (routing, filters,
+ * serialisation and your endpoints) so the first real requests don't pay for it.
+ * <p>
+ * Requests come from {@link WarmUp} methods and any {@value #REQUESTS}
+ * resources on the classpath. Each is sent up to
+ * {@link Configuration#warmUpIterations} times, or until
+ * {@link Configuration#warmUpMillis} runs out.
+ */
+public class WarmUpRunner {
+
+    private static final Logger log = getLogger(WarmUpRunner.class);
+
+    /**
+     * A classpath resource listing warm-up requests, one per line: the Http
+     * method, the path and, optionally, a Json body. Lines starting with
+     * <code>#</code> are ignored.
+     */
+    public static final String REQUESTS = "META-INF/restolino/warmup";
+
+    private final List<byte[]> requests = new ArrayList<>();
+    private final int iterations;
+    private final long millis;
+
+    /**
+     * @param router        The api, for finding {@link WarmUp} methods.
+     * @param configuration Iterations, time budget and, if set, the credentials to send.
+     */
+    public WarmUpRunner(Router router, Configuration configuration) {
+        this(router, configuration, null);
+    }
+
+    /**
+     * @param router        The api, for finding {@link WarmUp} methods.
+     * @param configuration Iterations, time budget and, if set, the credentials to send.
+     * @param classLoader   Where to look for {@value #REQUESTS} resources. If null, the classpath.
+     */
+    public WarmUpRunner(Router router, Configuration configuration, ClassLoader classLoader) {
+        this.iterations = configuration.warmUpIterations;
+        this.millis = configuration.warmUpMillis;
+        String authorization = null;
+        if (configuration.authenticationEnabled) {
+            String credentials = configuration.username + ":" + StringUtils.defaultString(configuration.password);
+            authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (Map.Entry<String, Route> route : router.api.entrySet()) {
+            for (Map.Entry<HttpMethod, RequestHandler> handler : route.getValue().requestHandlers.entrySet()) {
+                WarmUp warmUp = handler.getValue().handlerMethod.getAnnotation(WarmUp.class);
+                if (warmUp != null) {
+                    String path = "/" + route.getKey() + warmUp.path();
+                    requests.add(request(handler.getKey().name(), path, warmUp.body(), authorization));
+                }
+            }
+        }
+        try {
+            ClassLoader resourceLoader = classLoader != null ? classLoader : WarmUpRunner.class.getClassLoader();
+            Enumeration<URL> resources = resourceLoader.getResources(REQUESTS);
+            while (resources.hasMoreElements()) {
+                read(resources.nextElement(), authorization);
+            }
+        } catch (IOException e) {
+            log.info("Error reading warm-up requests from {}", REQUESTS, e);
+        }
+    }
+
+    /**
+     * @return If there's anything to warm up, true.
+     */
+    public boolean hasRequests() {
+        return iterations > 0 && millis > 0 && !requests.isEmpty();
+    }
+
+    /**
+     * Sends the warm-up requests and waits for the responses.
+     *
+     * @param connector A connector on the started server.
+     * @throws Exception If a request can't be sent.
+     */
+    public void run(LocalConnector connector) throws Exception {
+        log.info("Warming up with {} request(s), up to {} times each, for up to {}ms", requests.size(), iterations, millis);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        int sent = 0;
+        iterations:
+        for (int i = 0; i < iterations; i++) {
+            for (byte[] request : requests) {
+                ByteBuffer response = connector.getResponse(ByteBuffer.wrap(request), millis, TimeUnit.MILLISECONDS);
+                sent++;
+                if (i == 0) {
+                    String status = response == null ? "no response" : StringUtils.substringBefore(BufferUtil.toString(response, StandardCharsets.ISO_8859_1), "\r\n");
+                    if (!StringUtils.startsWith(status, "HTTP/1.1 2")) {
+                        log.info("Warm-up request returned {}: {}", status, StringUtils.substringBefore(new String(request, StandardCharsets.ISO_8859_1), "\r\n"));
+                    }
+                }
+                if (System.nanoTime() > deadline) {
+                    break iterations;
+                }
+            }
+        }
+        log.info("Warm-up sent {} requests in {}ms", sent, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void read(URL url, String authorization) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (StringUtils.isNotEmpty(line) && !line.startsWith("#")) {
+                    String[] fields = StringUtils.split(line, " ", 3);
+                    if (fields.length < 2) {
+                        log.info("Ignoring warm-up request in {}: {}", url, line);
+                    } else {
+                        requests.add(request(fields[0], fields[1], fields.length > 2 ? fields[2] : "", authorization));
+                    }
+                }
+            }
+        }
+        log.info("Read warm-up requests from {}", url);
+    }
+
+    /**
+     * @return A raw Http/1.1 request.
+     */
+    static byte[] request(String method, String path, String body, String authorization) {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder request = new StringBuilder();
+        request.append(StringUtils.upperCase(method)).append(' ').append(path).append(" HTTP/1.1\r\n");
+        request.append("Host: localhost\r\n");
+        if (authorization != null) {
+            request.append("Authorization: ").append(authorization).append("\r\n");
+        }
+        if (content.length > 0) {
+            request.append("Content-Type: application/json\r\n");
+        }
+        request.append("Content-Length: ").append(content.length).append("\r\n");
+        request.append("Connection: close\r\n");
+        request.append("\r\n");
+        byte[] head = request.toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] result = Arrays.copyOf(head, head.length + content.length);
+        System.arraycopy(content, 0, result, head.length, content.length);
+        return result;
+    }
+
+    /**
+     * @return The number of distinct warm-up requests.
+     */
+    int size() {
+        return requests.size();
+    }
+}
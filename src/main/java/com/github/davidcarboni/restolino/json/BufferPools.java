@@ -0,0 +1,46 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Finds a {@link ByteBufferPool} to borrow buffers from. When we're running in Jetty we share
+ * the connector's pool, otherwise (e.g. in tests, or wrapped requests) we fall back to our own.
+ */
+class BufferPools {
+
+    static final ByteBufferPool fallback = new ArrayByteBufferPool();
+
+    /**
+     * @param response The response being written.
+     * @return The Jetty connector's pool for the response, if available, otherwise {@link #fallback}.
+     */
+    static ByteBufferPool pool(ServletResponse response) {
+        if (response instanceof Response) {
+            return pool(((Response) response).getHttpChannel());
+        }
+        return fallback;
+    }
+
+    /**
+     * @param request The request being read.
+     * @return The Jetty connector's pool for the request, if available, otherwise {@link #fallback}.
+     */
+    static ByteBufferPool pool(ServletRequest request) {
+        if (request instanceof Request) {
+            return pool(((Request) request).getHttpChannel());
+        }
+        return fallback;
+    }
+
+    private static ByteBufferPool pool(HttpChannel channel) {
+        ByteBufferPool pool = channel != null ? channel.getByteBufferPool() : null;
+        return pool != null ? pool : fallback;
+    }
+}
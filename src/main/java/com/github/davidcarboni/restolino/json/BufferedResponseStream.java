@@ -0,0 +1,146 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Collects a response in a pooled, growable byte buffer so that it can be sent in one write
+ * with a <code>Content-Length</code> header, rather than chunked. This also gives the
+ * <code>GzipHandler</code> a content length to base its minimum-size decision on.
+ * <p>
+ * If the response grows past the threshold, whatever has been buffered so far is written out
+ * and the rest is streamed straight to the response, as it would have been before.
+ * <p>
+ * {@link #flush()} does nothing until we're streaming, because flushing a partial response
+ * would commit it without a length. {@link #close()} sends the response and closes the
+ * response output stream.
+ */
+class BufferedResponseStream extends OutputStream {
+
+    static final int initialSize = 4096;
+
+    private final HttpServletResponse response;
+    private final ByteBufferPool pool;
+    private final int threshold;
+
+    private ByteBuffer buffer;
+    private int count;
+    private OutputStream streaming;
+    private boolean closed;
+
+    /**
+     * @param response  The response to write to.
+     * @param pool      Where to borrow buffers from.
+     * @param threshold The maximum number of bytes to buffer before falling back to streaming.
+     */
+    BufferedResponseStream(HttpServletResponse response, ByteBufferPool pool, int threshold) {
+        this.response = response;
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (streaming == null && count < threshold) {
+            ensureCapacity(count + 1);
+            buffer.array()[buffer.arrayOffset() + count++] = (byte) b;
+        } else {
+            stream().write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (streaming == null && count + len <= threshold) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buffer.array(), buffer.arrayOffset() + count, len);
+            count += len;
+        } else {
+            stream().write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (streaming != null) {
+            streaming.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (streaming == null) {
+                response.setContentLengthLong(count);
+                OutputStream output = response.getOutputStream();
+                if (count > 0) {
+                    output.write(buffer.array(), buffer.arrayOffset(), count);
+                }
+                output.close();
+            } else {
+                streaming.close();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @return If the response outgrew the threshold and is being streamed, true.
+     */
+    boolean isStreaming() {
+        return streaming != null;
+    }
+
+    /**
+     * Switches to streaming, writing out anything buffered so far.
+     */
+    private OutputStream stream() throws IOException {
+        if (streaming == null) {
+            OutputStream output = response.getOutputStream();
+            if (count > 0) {
+                output.write(buffer.array(), buffer.arrayOffset(), count);
+            }
+            release();
+            streaming = output;
+        }
+        return streaming;
+    }
+
+    private void ensureCapacity(int size) {
+        if (buffer == null) {
+            buffer = acquire(Math.max(size, Math.min(initialSize, threshold)));
+        } else if (size > buffer.capacity()) {
+            ByteBuffer grown = acquire(Math.min(Math.max(size, buffer.capacity() * 2), threshold));
+            System.arraycopy(buffer.array(), buffer.arrayOffset(), grown.array(), grown.arrayOffset(), count);
+            pool.release(buffer);
+            buffer = grown;
+        }
+    }
+
+    private ByteBuffer acquire(int size) {
+        ByteBuffer result = pool.acquire(size, false);
+        if (!result.hasArray() || result.capacity() < size) {
+            // Not something we can use, so hand it straight back:
+            pool.release(result);
+            result = ByteBuffer.allocate(size);
+        }
+        return result;
+    }
+
+    private void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+}
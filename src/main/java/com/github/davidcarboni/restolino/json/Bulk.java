@@ -0,0 +1,138 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs reads and writes of many files in parallel for {@link Serialiser}.
+ */
+class Bulk {
+
+    private static final Logger log = getLogger(Bulk.class);
+
+    /**
+     * Writes each file as a separate task. If writes are being forced, each
+     * directory is synced once, after all the files in it have been written,
+     * rather than once per file.
+     */
+    static <T> BulkResult<T> serialise(Map<Path, T> files, Executor executor) {
+        boolean force = Serialiser.forceWrites;
+        List<Path> paths = new ArrayList<>(files.keySet());
+        Exception[] failures = new Exception[paths.size()];
+
+        // Group the writes by directory:
+        Map<Path, List<CompletableFuture<Void>>> directories = new LinkedHashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            int index = i;
+            Path path = paths.get(i);
+            T json = files.get(path);
+            CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+                try {
+                    write(path, json, force);
+                } catch (Exception e) {
+                    failures[index] = e;
+                }
+            }, executor);
+            directories.computeIfAbsent(path.toAbsolutePath().getParent(), d -> new ArrayList<>()).add(write);
+        }
+
+        // Sync each directory once all its files are written:
+        List<CompletableFuture<Void>> syncs = new ArrayList<>();
+        for (Map.Entry<Path, List<CompletableFuture<Void>>> directory : directories.entrySet()) {
+            CompletableFuture<Void> written = CompletableFuture.allOf(directory.getValue().toArray(new CompletableFuture[0]));
+            syncs.add(force ? written.thenRunAsync(() -> syncDirectory(directory.getKey()), executor) : written);
+        }
+        CompletableFuture.allOf(syncs.toArray(new CompletableFuture[0])).join();
+
+        BulkResult<T> result = new BulkResult<>();
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            if (failures[i] == null) {
+                result.succeeded(path, files.get(path));
+            } else {
+                result.failed(path, failures[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads each file as a separate task.
+     */
+    static <O> BulkResult<O> deserialise(Collection<Path> files, Class<O> type, Executor executor) {
+        List<Path> paths = new ArrayList<>(files);
+        Object[] values = new Object[paths.size()];
+        Exception[] failures = new Exception[paths.size()];
+
+        List<CompletableFuture<Void>> reads = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            int index = i;
+            Path path = paths.get(i);
+            reads.add(CompletableFuture.runAsync(() -> {
+                try {
+                    values[index] = Serialiser.deserialise(path, type);
+                } catch (Exception e) {
+                    failures[index] = e;
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+
+        BulkResult<O> result = new BulkResult<>();
+        for (int i = 0; i < paths.size(); i++) {
+            if (failures[i] == null) {
+                result.succeeded(paths.get(i), type.cast(values[i]));
+            } else {
+                result.failed(paths.get(i), failures[i]);
+            }
+        }
+        return result;
+    }
+
+    private static void write(Path path, Object json, boolean force) throws IOException {
+        // Bulk writes go straight to disk, bypassing write-behind:
+        Lock lock = Serialiser.lockForWriting(path);
+        try {
+            Serialiser.discardPending(path);
+            if (Serialiser.atomicWrites) {
+                // The content has to be forced before the rename, so that's per file:
+                Serialiser.serialiseAtomically(path, json, force);
+            } else {
+                Serialiser.write(path, json);
+                if (force) {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes new and renamed directory entries durable. Not all platforms allow
+     * a directory to be opened (e.g. Windows), so failure is only logged.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Unable to sync directory {}: {}", directory, e.toString());
+        }
+    }
+}
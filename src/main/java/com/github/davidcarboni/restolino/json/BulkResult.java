@@ -0,0 +1,54 @@
+package com.github.davidcarboni.restolino.json;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of a bulk operation on many files (see {@link Serialiser#serialiseAll(Map)}
+ * and {@link Serialiser#deserialiseAll(java.util.Collection, Class)}). A failure on one
+ * file doesn't stop the others, so check {@link #getFailures()}.
+ *
+ * @param <V> The type of object read or written.
+ */
+public class BulkResult<V> {
+
+    private final Map<Path, V> values = new LinkedHashMap<>();
+    private final Map<Path, Exception> failures = new LinkedHashMap<>();
+
+    void succeeded(Path path, V value) {
+        values.put(path, value);
+    }
+
+    void failed(Path path, Exception e) {
+        failures.put(path, e);
+    }
+
+    /**
+     * @return The files that were read or written successfully, in the order they were given,
+     * with the objects read from or written to them.
+     */
+    public Map<Path, V> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return The files that couldn't be read or written, in the order they were given, with the reason why.
+     */
+    public Map<Path, Exception> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return If every file was read or written successfully, true.
+     */
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return values.size() + " succeeded, " + failures.size() + " failed";
+    }
+}
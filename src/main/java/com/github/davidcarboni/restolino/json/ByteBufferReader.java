@@ -0,0 +1,80 @@
+package com.github.davidcarboni.restolino.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes UTF-8 straight from a {@link ByteBuffer} (typically a memory-mapped
+ * file) into the parser's own char buffer, rather than copying the bytes through
+ * a channel, a stream decoder and a {@link java.io.BufferedReader} first.
+ * <p>
+ * Malformed input is replaced, as it is by {@link java.nio.channels.Channels#newReader}.
+ */
+class ByteBufferReader extends Reader {
+
+    private final ByteBuffer buffer;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean flushed;
+    // The second half of a surrogate pair that didn't fit in the caller's buffer:
+    private int pending = -1;
+
+    ByteBufferReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pending >= 0) {
+            cbuf[off] = (char) pending;
+            pending = -1;
+            return 1;
+        }
+        if (flushed) {
+            return -1;
+        }
+        if (len == 1) {
+            // A supplementary character needs two chars, so decode it somewhere that has room:
+            char[] pair = new char[2];
+            int count = read(pair, 0, 2);
+            if (count > 0) {
+                cbuf[off] = pair[0];
+                if (count == 2) {
+                    pending = pair[1];
+                }
+            }
+            return count < 0 ? -1 : 1;
+        }
+
+        CharBuffer output = CharBuffer.wrap(cbuf, off, len);
+        CoderResult result = decoder.decode(buffer, output, true);
+        if (!result.isOverflow() && !buffer.hasRemaining()) {
+            // All input consumed, so flush out anything the decoder's holding on to:
+            result = decoder.flush(output);
+            flushed = !result.isOverflow();
+        }
+        if (result.isError()) {
+            // Can't happen with REPLACE, but just in case:
+            throw new CharacterCodingException();
+        }
+
+        int count = output.position() - off;
+        return count == 0 && flushed ? -1 : count;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release: the buffer is unmapped when it's garbage collected.
+    }
+}
@@ -0,0 +1,348 @@
+package com.github.davidcarboni.restolino.json;
+
+import com.github.davidcarboni.restolino.reload.Watcher;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A read-through cache for {@link Serialiser#deserialise(Path, Class)}, for
+ * when the same Json files are read over and over.
+ * <p>
+ * Entries are keyed by path and type. Each lookup checks the file's key,
+ * modified time and size (one <code>stat</code>) so a changed file is always
+ * read again. If a directory is being watched (see {@link #watch(Path)}),
+ * changed files are also dropped from the cache as soon as the change is
+ * noticed, so they don't take up space until they're next read.
+ * <p>
+ * The cache is bounded by the total size of the cached files, which is used
+ * as an approximation of the memory the deserialised objects take up. The
+ * least recently used files are evicted first.
+ * <p>
+ * By default, every reader of a file gets the same instance, so cached objects
+ * must be treated as read-only. If callers modify what they're given, set
+ * <code>copyOnRead</code> and each hit returns a fresh copy.
+ */
+public class DocumentCache {
+
+    private static final Logger log = getLogger(DocumentCache.class);
+
+    /**
+     * Loads a file, in the same way as {@link Serialiser#deserialise(Path, Class)} would without a cache.
+     */
+    interface Loader {
+        <O> O load(Path path, Class<O> type) throws IOException;
+    }
+
+    private final long maxBytes;
+    private final boolean copyOnRead;
+    private final Loader loader;
+
+    // Guarded by itself:
+    private final LinkedHashMap<Path, Document> documents = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    // Bumped by invalidation, so a load that was overtaken by a write isn't cached.
+    // Striped by path, like PathLocks, so the table stays the same size. Guarded by documents:
+    private final long[] generations = new long[PathLocks.stripes];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxBytes   The maximum total size of the files to cache.
+     * @param copyOnRead If true, every hit returns a new copy of the cached object.
+     * @param loader     Reads a file when it's not in the cache.
+     */
+    DocumentCache(long maxBytes, boolean copyOnRead, Loader loader) {
+        this.maxBytes = maxBytes;
+        this.copyOnRead = copyOnRead;
+        this.loader = loader;
+    }
+
+    /**
+     * Gets the given file as the given type, from the cache if it hasn't changed.
+     *
+     * @param path The file to read.
+     * @param type The type to deserialise into.
+     * @param <O>  The type to deserialise to.
+     * @return The deserialised file.
+     * @throws IOException If an error occurs in reading the file.
+     */
+    <O> O get(Path path, Class<O> type) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        long generation;
+        synchronized (documents) {
+            generation = generations[stripe(key)];
+        }
+
+        // NB the attributes are read before the content, so if the file changes
+        // in between, the next lookup will see a different version and reload:
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            invalidate(key);
+            throw e;
+        }
+
+        Document document;
+        synchronized (documents) {
+            document = documents.get(key);
+        }
+        if (document != null && document.matches(attributes)) {
+            Object value = document.values.get(type);
+            if (value != null) {
+                hits.increment();
+                return copyOnRead ? copy(value, type) : type.cast(value);
+            }
+        }
+
+        misses.increment();
+        O result = loader.load(key, type);
+        if (result != null && attributes.size() <= maxBytes && unchanged(key, attributes)) {
+            if (document == null || !document.matches(attributes)) {
+                document = new Document(attributes);
+            }
+            document.values.put(type, result);
+            put(key, document, generation);
+        }
+        return copyOnRead && result != null ? copy(result, type) : result;
+    }
+
+    /**
+     * Checks the file still has the attributes it had before it was loaded. An
+     * in-place rewrite can keep the same size, and on some filesystems the same
+     * modified time, so this doesn't catch everything: the generation check in
+     * {@link #put(Path, Document, long)} catches writes made through {@link Serialiser}.
+     */
+    private static boolean unchanged(Path key, BasicFileAttributes before) throws IOException {
+        try {
+            return new Document(before).matches(Files.readAttributes(key, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops the given file from the cache.
+     *
+     * @param path The file that has changed.
+     */
+    public void invalidate(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        synchronized (documents) {
+            generations[stripe(key)]++;
+            Document removed = documents.remove(key);
+            if (removed != null) {
+                bytes -= removed.size;
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops every file in the given directory (and its subdirectories) from the cache.
+     *
+     * @param directory The directory in which things have changed.
+     */
+    public void invalidateAll(Path directory) {
+        Path prefix = directory.toAbsolutePath().normalize();
+        synchronized (documents) {
+            bumpGenerations();
+            Iterator<Map.Entry<Path, Document>> iterator = documents.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, Document> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    bytes -= entry.getValue().size;
+                    invalidations.increment();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops anything deserialised into classes from the given class loader, so
+     * it can be garbage collected once the classes have been reloaded.
+     *
+     * @param classLoader The class loader that's being retired.
+     */
+    public void purge(ClassLoader classLoader) {
+        synchronized (documents) {
+            bumpGenerations();
+            Iterator<Document> iterator = documents.values().iterator();
+            while (iterator.hasNext()) {
+                Document document = iterator.next();
+                document.values.keySet().removeIf(type -> type.getClassLoader() == classLoader);
+                if (document.values.isEmpty()) {
+                    bytes -= document.size;
+                    invalidations.increment();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops cached files as soon as they change on disk, using the
+     * {@link Watcher} that's used for class reloading.
+     *
+     * @param root The directory to watch, including subdirectories.
+     * @return The {@link Watcher}. Close it to stop watching.
+     * @throws IOException If the {@link java.nio.file.WatchService} can't be created.
+     */
+    public Watcher watch(Path root) throws IOException {
+        return Watcher.start(root, 0, path -> true, changes -> changes.forEach((path, kind) -> {
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                invalidateAll(path);
+            } else {
+                invalidate(path);
+            }
+        }));
+    }
+
+    /**
+     * @return The proportion of lookups that were served from the cache, between 0 and 1.
+     */
+    public double getHitRatio() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return The total size of the cached files.
+     */
+    public long getBytes() {
+        synchronized (documents) {
+            return bytes;
+        }
+    }
+
+    /**
+     * @return The maximum total size of the cached files.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The number of files in the cache.
+     */
+    public int getSize() {
+        synchronized (documents) {
+            return documents.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files, %d of %d bytes, hit ratio %.3f (%d hits, %d misses, %d evictions, %d invalidations)",
+                getSize(), getBytes(), maxBytes, getHitRatio(), getHits(), getMisses(), getEvictions(), getInvalidations());
+    }
+
+    /**
+     * Caches a document, unless the file has been invalidated since the given
+     * generation, in which case what was loaded may already be out of date.
+     */
+    private void put(Path key, Document document, long generation) {
+        synchronized (documents) {
+            if (generations[stripe(key)] != generation) {
+                log.trace("Not caching {}: invalidated while it was being read", key);
+                return;
+            }
+            Document previous = documents.put(key, document);
+            if (previous != document) {
+                if (previous != null) {
+                    bytes -= previous.size;
+                }
+                bytes += document.size;
+            }
+
+            // Evict least recently used files until we're back under the limit:
+            Iterator<Document> iterator = documents.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                Document eldest = iterator.next();
+                bytes -= eldest.size;
+                evictions.increment();
+                iterator.remove();
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Cached {}: {}", key, this);
+        }
+    }
+
+    private static int stripe(Path key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & (PathLocks.stripes - 1);
+    }
+
+    private void bumpGenerations() {
+        for (int i = 0; i < generations.length; i++) {
+            generations[i]++;
+        }
+    }
+
+    private static <O> O copy(Object value, Class<O> type) {
+        JsonEngine engine = Serialiser.getEngine();
+        return engine.fromJson(engine.toJson(value), type);
+    }
+
+    /**
+     * A version of a file, and the types it's been deserialised into.
+     */
+    static class Document {
+
+        final Object fileKey;
+        final FileTime modified;
+        final long size;
+        final Map<Class<?>, Object> values = new ConcurrentHashMap<>();
+
+        Document(BasicFileAttributes attributes) {
+            fileKey = attributes.fileKey();
+            modified = attributes.lastModifiedTime();
+            size = attributes.size();
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() &&
+                    modified.equals(attributes.lastModifiedTime()) &&
+                    Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+}
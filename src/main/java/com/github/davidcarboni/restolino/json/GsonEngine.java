@@ -0,0 +1,31 @@
+package com.github.davidcarboni.restolino.json;
+
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * The default {@link JsonEngine}, which uses the {@link com.google.gson.Gson} instance published by
+ * {@link Serialiser#getGson()}. Customise it through {@link Serialiser#configureBuilder(java.util.function.Consumer)}.
+ */
+public class GsonEngine implements JsonEngine {
+
+    @Override
+    public String toJson(Object object) {
+        return Serialiser.getGson().toJson(object);
+    }
+
+    @Override
+    public <O> O fromJson(String json, Class<O> type) {
+        return Serialiser.getGson().fromJson(json, type);
+    }
+
+    @Override
+    public void toJson(Object object, Writer writer) {
+        Serialiser.getGson().toJson(object, writer);
+    }
+
+    @Override
+    public <O> O fromJson(Reader reader, Class<O> type) {
+        return Serialiser.getGson().fromJson(reader, type);
+    }
+}
@@ -0,0 +1,358 @@
+package com.github.davidcarboni.restolino.json;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.davidcarboni.restolino.framework.Home;
+import com.github.davidcarboni.restolino.framework.NotFound;
+import com.github.davidcarboni.restolino.framework.PostFilter;
+import com.github.davidcarboni.restolino.framework.PreFilter;
+import com.github.davidcarboni.restolino.framework.ServerError;
+import com.github.davidcarboni.restolino.framework.Startup;
+import com.github.davidcarboni.restolino.json.typeadapters.ClassSerialiser;
+import com.github.davidcarboni.restolino.json.typeadapters.DateTypeAdapter;
+import com.github.davidcarboni.restolino.json.typeadapters.InstantTypeAdapter;
+import com.github.davidcarboni.restolino.json.typeadapters.LocalDateTypeAdapter;
+import com.github.davidcarboni.restolino.json.typeadapters.MethodSerialiser;
+import com.github.davidcarboni.restolino.json.typeadapters.ObjectClassSerialser;
+import com.github.davidcarboni.restolino.json.typeadapters.OffsetDateTimeTypeAdapter;
+import com.github.davidcarboni.restolino.json.typeadapters.StringTypeAdapter;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * A {@link JsonEngine} backed by Jackson databind, which generates and caches its serialisers
+ * rather than reflecting on every call. Jackson is an optional dependency, so you'll need to add
+ * <code>com.fasterxml.jackson.core:jackson-databind</code> to your project to use this.
+ * <p>
+ * The {@link ObjectMapper} is configured to produce the same Json as the default
+ * {@link GsonEngine}: fields (of any visibility) rather than getters, nulls left out, unknown
+ * properties ignored, dates in {@link Serialiser#toUTCStringDateFormat} and the Gson type adapters
+ * in the <code>json.typeadapters</code> package bridged across. Any Jackson modules on the
+ * classpath (e.g. Afterburner or Blackbird) are registered too.
+ */
+public class JacksonEngine implements JsonEngine {
+
+    /**
+     * The interface types that {@link Serialiser} represents by class name.
+     */
+    static final Set<Class<?>> classNameTypes = new HashSet<>(Arrays.asList(
+            Home.class, NotFound.class, ServerError.class, Startup.class, PreFilter.class, PostFilter.class));
+
+    /**
+     * Content type for CBOR (RFC 8949).
+     */
+    public static final String CBOR = "application/cbor";
+
+    /**
+     * Content type for Jackson's Smile binary Json format.
+     */
+    public static final String SMILE = "application/x-jackson-smile";
+
+    private volatile ObjectMapper mapper;
+    private final String contentType;
+
+    public JacksonEngine() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * @param mapper An {@link ObjectMapper} to configure and use.
+     */
+    public JacksonEngine(ObjectMapper mapper) {
+        this(mapper, "application/json");
+    }
+
+    /**
+     * @param mapper      An {@link ObjectMapper} to configure and use. This can be for a
+     *                    different Jackson data format, such as CBOR, Smile or MessagePack.
+     * @param contentType The content type of the data format.
+     */
+    public JacksonEngine(ObjectMapper mapper, String contentType) {
+        this.mapper = configure(mapper);
+        this.contentType = contentType;
+    }
+
+    /**
+     * Creates an engine for one of the binary encodings that Jackson provides. You'll need the
+     * corresponding <code>com.fasterxml.jackson.dataformat</code> dependency in your project.
+     *
+     * @param name "cbor" or "smile".
+     * @return A new engine for the encoding.
+     * @throws IllegalArgumentException If the name isn't recognised.
+     */
+    public static JacksonEngine forEncoding(String name) {
+        if (StringUtils.equalsIgnoreCase("cbor", name)) {
+            return new JacksonEngine(Cbor.newMapper(), CBOR);
+        } else if (StringUtils.equalsIgnoreCase("smile", name)) {
+            return new JacksonEngine(Smile.newMapper(), SMILE);
+        }
+        throw new IllegalArgumentException("Unknown encoding: " + name);
+    }
+
+    /**
+     * The data formats are optional dependencies, so they're only referenced from
+     * their own classes. That way they're not loaded (and needn't be on the classpath)
+     * unless the encoding is asked for.
+     */
+    private static class Cbor {
+        static ObjectMapper newMapper() {
+            return new ObjectMapper(new CBORFactory());
+        }
+    }
+
+    private static class Smile {
+        static ObjectMapper newMapper() {
+            return new ObjectMapper(new SmileFactory());
+        }
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isText() {
+        return !mapper.getFactory().canHandleBinaryNatively();
+    }
+
+    /**
+     * @return The {@link ObjectMapper}, in case you need to customise it. It's
+     * replaced with a copy when reloaded classes are purged (see {@link #purge(ClassLoader)}),
+     * so customise it on startup and don't hang on to it.
+     */
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Jackson doesn't offer a way to flush its deserializer cache, so the mapper is
+     * replaced with a copy, which keeps the configuration but starts with empty caches.
+     */
+    @Override
+    public void purge(ClassLoader classLoader) {
+        ObjectMapper current = mapper;
+        current.getTypeFactory().clearCache();
+        try {
+            mapper = current.copy();
+        } catch (IllegalStateException e) {
+            // A subclass that doesn't support copy(), so do what we can:
+            ((DefaultSerializerProvider) current.getSerializerProvider()).flushCachedSerializers();
+        }
+    }
+
+    static ObjectMapper configure(ObjectMapper mapper) {
+
+        // Bind fields, like Gson does:
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+
+        // Gson leaves out nulls and ignores anything it doesn't recognise:
+        mapper.setDefaultPropertyInclusion(JsonInclude.Value.construct(JsonInclude.Include.NON_NULL, JsonInclude.Include.NON_NULL));
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+
+        // Serialiser closes streams, not the engine:
+        mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        mapper.getFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+        // Same date format as the Gson default:
+        mapper.setTimeZone(TimeZone.getDefault());
+        mapper.setDateFormat(new SimpleDateFormat(Serialiser.toUTCStringDateFormat, Locale.US));
+
+        // Registered last so that our adapters take precedence (e.g. over a JavaTimeModule):
+        mapper.findAndRegisterModules();
+        mapper.registerModule(new TypeAdapterModule());
+        return mapper;
+    }
+
+    @Override
+    public String toJson(Object object) {
+        try {
+            return mapper.writeValueAsString(object);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <O> O fromJson(String json, Class<O> type) {
+        try {
+            return read(mapper.createParser(json), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void toJson(Object object, Writer writer) throws IOException {
+        try {
+            mapper.writeValue(writer, object);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <O> O fromJson(Reader reader, Class<O> type) throws IOException {
+        return read(mapper.createParser(reader), type);
+    }
+
+    @Override
+    public void toJson(Object object, OutputStream output) throws IOException {
+        try {
+            mapper.writeValue(output, object);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <O> O fromJson(InputStream input, Class<O> type) throws IOException {
+        return read(mapper.createParser(input), type);
+    }
+
+    @Override
+    public <O> O fromJson(byte[] bytes, int offset, int length, Class<O> type) {
+        try {
+            return read(mapper.createParser(bytes, offset, length), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a value, returning null for empty input (as Gson does) rather than failing.
+     */
+    private <O> O read(JsonParser parser, Class<O> type) throws IOException {
+        try (JsonParser closing = parser) {
+            if (closing.nextToken() == null) {
+                return null;
+            }
+            return mapper.readValue(closing, type);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Bridges the Gson type adapters that {@link Serialiser} registers by default, so that both
+     * engines produce the same output.
+     */
+    static class TypeAdapterModule extends SimpleModule {
+
+        TypeAdapterModule() {
+            super(TypeAdapterModule.class.getSimpleName());
+            addSerializer(new GsonSerialiserBridge<>(Class.class, new ClassSerialiser()));
+            addSerializer(new GsonSerialiserBridge<>(Method.class, new MethodSerialiser()));
+            addStringAdapter(this, Date.class, new DateTypeAdapter());
+            addStringAdapter(this, Instant.class, new InstantTypeAdapter());
+            addStringAdapter(this, LocalDate.class, new LocalDateTypeAdapter());
+            addStringAdapter(this, OffsetDateTime.class, new OffsetDateTimeTypeAdapter());
+
+            // Gson applies these to fields declared as one of the framework interfaces,
+            // rather than to every implementation, so we do the same:
+            final GsonSerialiserBridge<Object> className = new GsonSerialiserBridge<>(Object.class, new ObjectClassSerialser());
+            setSerializerModifier(new BeanSerializerModifier() {
+                @Override
+                public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+                    for (BeanPropertyWriter property : beanProperties) {
+                        if (classNameTypes.contains(property.getType().getRawClass())) {
+                            property.assignSerializer(className);
+                        }
+                    }
+                    return beanProperties;
+                }
+            });
+        }
+    }
+
+    /**
+     * Uses a {@link StringTypeAdapter} to read and write values as Json strings.
+     */
+    private static <T> void addStringAdapter(SimpleModule module, Class<T> type, StringTypeAdapter<T> adapter) {
+        module.addSerializer(type, new StdSerializer<T>(type) {
+            @Override
+            public void serialize(T value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+                generator.writeString(adapter.format(value));
+            }
+        });
+        module.addDeserializer(type, new StdScalarDeserializer<T>(type) {
+            @Override
+            @SuppressWarnings("unchecked")
+            public T deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+                String value = parser.getValueAsString();
+                try {
+                    return StringUtils.isEmpty(value) ? null : adapter.parse(value);
+                } catch (RuntimeException e) {
+                    return (T) context.handleWeirdStringValue(type, value, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Adapts a Gson {@link JsonSerializer} for use by Jackson. The serialisers in
+     * <code>json.typeadapters</code> don't use their context, so none is passed.
+     */
+    static class GsonSerialiserBridge<T> extends StdSerializer<T> {
+
+        private final JsonSerializer<T> serialiser;
+
+        @SuppressWarnings("unchecked")
+        GsonSerialiserBridge(Class<?> type, JsonSerializer<T> serialiser) {
+            super((Class<T>) type);
+            this.serialiser = serialiser;
+        }
+
+        @Override
+        public void serialize(T value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            JsonElement json = serialiser.serialize(value, value.getClass(), null);
+            if (json.isJsonPrimitive() && ((JsonPrimitive) json).isString()) {
+                generator.writeString(json.getAsString());
+            } else {
+                generator.writeRawValue(json.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.davidcarboni.restolino.json;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Reads the elements of a top-level Json array one at a time, so only the
+ * elements currently being processed need to be in memory.
+ * <p>
+ * Parsing is sequential, but {@link #trySplit()} hands off fixed-size batches
+ * of parsed elements, so the processing of a parallel stream is spread across
+ * cores. Batches don't grow (unlike {@link Spliterators.AbstractSpliterator}),
+ * which keeps memory bounded however large the file is.
+ *
+ * @param <T> The element type.
+ */
+class JsonArraySpliterator<T> implements Spliterator<T> {
+
+    private final JsonReader reader;
+    private final Gson gson;
+    private final Class<T> type;
+    private final int batchSize;
+    private boolean started;
+    private boolean finished;
+
+    JsonArraySpliterator(JsonReader reader, Gson gson, Class<T> type, int batchSize) {
+        this.reader = reader;
+        this.gson = gson;
+        this.type = type;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+            if (!started) {
+                started = true;
+                reader.beginArray();
+            }
+            if (finished) {
+                return false;
+            }
+            if (!reader.hasNext()) {
+                reader.endArray();
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw new IllegalStateException("Expected a single top-level array but found " + reader.peek() + " at " + reader.getPath());
+                }
+                finished = true;
+                return false;
+            }
+            action.accept(gson.fromJson(reader, type));
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        Batch batch = new Batch();
+        while (batch.count < batchSize && tryAdvance(batch)) {
+            // Keep reading
+        }
+        return batch.count == 0 ? null : Spliterators.spliterator(batch.elements, 0, batch.count, characteristics());
+    }
+
+    @Override
+    public long estimateSize() {
+        return finished ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED;
+    }
+
+    private class Batch implements Consumer<T> {
+        final Object[] elements = new Object[batchSize];
+        int count;
+
+        @Override
+        public void accept(T element) {
+            elements[count++] = element;
+        }
+    }
+}
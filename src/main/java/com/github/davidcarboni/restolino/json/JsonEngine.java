@@ -0,0 +1,123 @@
+package com.github.davidcarboni.restolino.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The thing that actually does the Json binding for {@link Serialiser}.
+ * <p>
+ * {@link GsonEngine} is the default. If Gson's reflective binding is too slow for you,
+ * {@link JacksonEngine} can be selected by setting <code>restolino.jsonengine=jackson</code>
+ * (see {@link com.github.davidcarboni.restolino.Configuration#JSON_ENGINE}), or you can
+ * name your own implementation by class.
+ * <p>
+ * Implementations must be thread-safe. They should not close the streams, readers or
+ * writers they're given - {@link Serialiser} takes care of that. Malformed input should be
+ * reported with an unchecked exception, so that {@link Serialiser} can treat all engines the same.
+ */
+public interface JsonEngine {
+
+    /**
+     * @return The content type this engine reads and writes. Engines for binary
+     * encodings (see {@link Serialiser#addEncoding(JsonEngine)}) override this.
+     */
+    default String contentType() {
+        return "application/json";
+    }
+
+    /**
+     * @return If the encoding is UTF-8 text, true. False for binary encodings.
+     */
+    default boolean isText() {
+        return true;
+    }
+
+    /**
+     * Drops anything cached for classes loaded by the given class loader, so that
+     * it can be garbage collected. This is called when classes are reloaded and
+     * the old ones are no longer in use. The default implementation does nothing.
+     *
+     * @param classLoader The class loader that's being retired.
+     */
+    default void purge(ClassLoader classLoader) {
+    }
+
+    /**
+     * @param object The object to serialise.
+     * @return The Json as a String.
+     */
+    String toJson(Object object);
+
+    /**
+     * @param json The Json to deserialise.
+     * @param type The type to deserialise into.
+     * @param <O>  The type to deserialise to.
+     * @return A new instance of the given type.
+     */
+    <O> O fromJson(String json, Class<O> type);
+
+    /**
+     * @param object The object to serialise.
+     * @param writer Where to write the Json.
+     * @throws IOException If an error occurs in writing.
+     */
+    void toJson(Object object, Writer writer) throws IOException;
+
+    /**
+     * @param reader Where to read the Json from.
+     * @param type   The type to deserialise into.
+     * @param <O>    The type to deserialise to.
+     * @return A new instance of the given type.
+     * @throws IOException If an error occurs in reading.
+     */
+    <O> O fromJson(Reader reader, Class<O> type) throws IOException;
+
+    /**
+     * Writes UTF-8 Json to the given stream. The default implementation goes through a
+     * {@link Writer}; engines that can write bytes directly should override this.
+     *
+     * @param object The object to serialise.
+     * @param output Where to write the Json.
+     * @throws IOException If an error occurs in writing.
+     */
+    default void toJson(Object object, OutputStream output) throws IOException {
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        toJson(object, writer);
+        writer.flush();
+    }
+
+    /**
+     * Reads UTF-8 Json from the given stream. The default implementation goes through a
+     * {@link Reader}; engines that can read bytes directly should override this.
+     *
+     * @param input Where to read the Json from.
+     * @param type  The type to deserialise into.
+     * @param <O>   The type to deserialise to.
+     * @return A new instance of the given type.
+     * @throws IOException If an error occurs in reading.
+     */
+    default <O> O fromJson(InputStream input, Class<O> type) throws IOException {
+        return fromJson(new InputStreamReader(input, StandardCharsets.UTF_8), type);
+    }
+
+    /**
+     * Reads UTF-8 Json from part of a byte array. The default implementation decodes to a
+     * String; engines that can parse bytes directly should override this.
+     *
+     * @param bytes  The buffer containing the Json.
+     * @param offset Where the Json starts.
+     * @param length The number of bytes of Json.
+     * @param type   The type to deserialise into.
+     * @param <O>    The type to deserialise to.
+     * @return A new instance of the given type.
+     */
+    default <O> O fromJson(byte[] bytes, int offset, int length, Class<O> type) {
+        return fromJson(new String(bytes, offset, length, StandardCharsets.UTF_8), type);
+    }
+}
@@ -0,0 +1,330 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * An append-only log of Json records, one per line (NDJSON), for audit trails
+ * and event logs that would otherwise be rewritten as an ever-growing array.
+ * <p>
+ * Any number of threads can {@link #append(Object)} at once. Records are
+ * serialised on the calling thread and handed to a single writer thread, which
+ * writes everything that's waiting in one go and, if <code>force</code> is set,
+ * syncs it to disk once for the whole group. Each caller gets a future that
+ * completes when their record has been written (and synced, if forced).
+ * <p>
+ * Only one {@link JsonLog} (in one process) should write to a given file.
+ * Use {@link #read(Path, Class)} to replay it.
+ */
+public class JsonLog implements Closeable {
+
+    private static final Logger log = getLogger(JsonLog.class);
+
+    private static final Record close = new Record(null);
+
+    private final Path path;
+    private final boolean force;
+    private final long commitWindowMillis;
+    private final FileChannel channel;
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Opens a log that syncs to disk if {@link Serialiser#forceWrites} is set.
+     *
+     * @param path The log file. It's created if it doesn't exist.
+     * @throws IOException If the file can't be opened.
+     */
+    public JsonLog(Path path) throws IOException {
+        this(path, Serialiser.forceWrites, 0);
+    }
+
+    /**
+     * If the file was reopened and ends part-way through a line (e.g. the
+     * process was killed mid-write), the fragment is cut off so that the next
+     * record starts on a line of its own.
+     *
+     * @param path               The log file. It's created if it doesn't exist.
+     * @param force              If true, each group of records is synced to disk before the futures complete.
+     * @param commitWindowMillis How long to wait for more records before writing a group. Zero means
+     *                           whatever's waiting is written straight away, which still groups
+     *                           records under load.
+     * @throws IOException If the file can't be opened.
+     */
+    public JsonLog(Path path, boolean force, long commitWindowMillis) throws IOException {
+        this.path = path;
+        this.force = force;
+        this.commitWindowMillis = commitWindowMillis;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            truncateIncompleteLine();
+            // Only the writer thread writes, so appending is a matter of starting at the end:
+            channel.position(channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        writer = new Thread(this::write, "JsonLog " + path.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends a record to the log.
+     *
+     * @param record The object to serialise as one line of the log.
+     * @return A future that completes when the record has been written, or completes
+     * exceptionally if it couldn't be.
+     */
+    public CompletableFuture<Void> append(Object record) {
+        Record pending = new Record(line(record));
+        // Synchronized with close() so nothing gets queued after the close marker:
+        synchronized (queue) {
+            if (closed) {
+                pending.future.completeExceptionally(new IllegalStateException("Log is closed: " + path));
+            } else {
+                queue.add(pending);
+            }
+        }
+        return pending.future;
+    }
+
+    /**
+     * Stops accepting records, waits for the ones already appended to be
+     * written and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(close);
+        }
+        // The writer closes the file once it's written everything:
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads a log back, one record at a time, so it doesn't need to fit in memory.
+     * If the last line is incomplete (e.g. the process was killed mid-write) it's skipped.
+     * Close the stream when you're done.
+     *
+     * @param path The log file.
+     * @param type The type to deserialise each record into.
+     * @param <T>  The type to deserialise to.
+     * @return A stream of the records in the order they were written.
+     * @throws IOException If the file can't be opened.
+     */
+    public static <T> Stream<T> read(Path path, Class<T> type) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        Iterator<T> records = new Iterator<T>() {
+            T next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (next == null) {
+                        String line = reader.readLine();
+                        if (line == null) {
+                            return false;
+                        } else if (StringUtils.isNotBlank(line)) {
+                            next = parse(line);
+                        }
+                    }
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T result = next;
+                next = null;
+                return result;
+            }
+
+            private T parse(String line) throws IOException {
+                try {
+                    return Serialiser.getEngine().fromJson(line, type);
+                } catch (RuntimeException e) {
+                    if (reader.readLine() == null) {
+                        log.warn("Skipping incomplete last record in {}", path);
+                        return null;
+                    }
+                    throw e;
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Serialises a record to a single line. Line breaks can only appear
+     * between tokens (e.g. with pretty printing), so they're safe to replace.
+     */
+    private static ByteBuffer line(Object record) {
+        String json = Serialiser.getEngine().toJson(record);
+        json = StringUtils.replaceChars(json, "\r\n", "  ");
+        return ByteBuffer.wrap((json + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cuts the file back to the end of the last complete line.
+     */
+    private void truncateIncompleteLine() throws IOException {
+        long size = channel.size();
+        long end = size;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (end > 0) {
+            buffer.clear();
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.limit((int) (end - start));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + path);
+                }
+            }
+            for (int i = buffer.limit() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    end = start + i + 1;
+                    if (end < size) {
+                        log.warn("Truncating incomplete last record in {}", path);
+                        channel.truncate(end);
+                    }
+                    return;
+                }
+            }
+            end = start;
+        }
+        if (size > 0) {
+            log.warn("Truncating incomplete last record in {}", path);
+            channel.truncate(0);
+        }
+    }
+
+    /**
+     * The writer thread: takes whatever's waiting, writes it in one go, syncs and
+     * completes the futures. It closes the file when it stops, whether that's
+     * because the log was closed or because it was interrupted.
+     */
+    private void write() {
+        try {
+            writeGroups();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Error closing {}", path, e);
+            }
+        }
+    }
+
+    private void writeGroups() {
+        List<Record> group = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                group.add(queue.take());
+                if (commitWindowMillis > 0) {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitWindowMillis);
+                    long remaining;
+                    while ((remaining = deadline - System.nanoTime()) > 0 && group.get(group.size() - 1) != close) {
+                        Record record = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (record != null) {
+                            group.add(record);
+                        }
+                    }
+                }
+                queue.drainTo(group);
+            } catch (InterruptedException e) {
+                log.info("{} interrupted, closing.", writer.getName());
+                synchronized (queue) {
+                    closed = true;
+                    queue.drainTo(group);
+                }
+            }
+
+            closing = group.remove(close) || closed && queue.isEmpty();
+            commit(group);
+            group.clear();
+        }
+    }
+
+    private void commit(List<Record> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        try {
+            ByteBuffer[] buffers = new ByteBuffer[group.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = group.get(i).line;
+            }
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            if (force) {
+                channel.force(false);
+            }
+            for (Record record : group) {
+                record.future.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Error writing {} records to {}", group.size(), path, e);
+            for (Record record : group) {
+                record.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Record {
+        final ByteBuffer line;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Record(ByteBuffer line) {
+            this.line = line;
+        }
+    }
+}
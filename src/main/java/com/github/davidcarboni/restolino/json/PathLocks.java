@@ -0,0 +1,172 @@
+package com.github.davidcarboni.restolino.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process read/write locks for Json files, so that threads in this JVM queue
+ * up on a lock rather than spinning on {@link java.nio.channels.FileChannel#tryLock()}.
+ * <p>
+ * Locks are striped by the hash of the normalised absolute path, so the table has
+ * a fixed size however many files there are. Two files can occasionally share a
+ * stripe, which costs a little contention but never correctness.
+ * <p>
+ * File locks are held by the whole JVM, so threads reading the same file share
+ * one {@link SharedRead}: a channel and a shared OS lock that stay open until the
+ * last of them has finished. A second channel of their own wouldn't do: closing
+ * it can release every lock this process holds on the file.
+ */
+class PathLocks {
+
+    static final int stripes = 256;
+
+    private final ReadWriteLock[] locks = new ReadWriteLock[stripes];
+
+    // Guarded by itself:
+    private final Map<Path, SharedRead> reads = new HashMap<>();
+
+    PathLocks() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * @param path The file to be read or written.
+     * @return The lock for the given path. Different spellings of the same path give the same lock.
+     */
+    ReadWriteLock get(Path path) {
+        int hash = key(path).hashCode();
+        // Spread the bits, as HashMap does, since the stripe count is a power of two:
+        hash ^= (hash >>> 16);
+        return locks[hash & (stripes - 1)];
+    }
+
+    /**
+     * Opens a file for reading, joining any other threads in this JVM that are
+     * reading it. Hold the path's in-process read lock first, so no thread in
+     * this JVM is writing the file. Close the result once you've finished reading.
+     *
+     * @param path     The file to be read.
+     * @param fileLock If true, a shared OS lock is held on the file while it's
+     *                 being read, so other processes can't write it.
+     * @return A channel shared with other readers of the file.
+     * @throws IOException If the file can't be opened.
+     */
+    SharedRead read(Path path, boolean fileLock) throws IOException {
+        Path key = key(path);
+        SharedRead read;
+        synchronized (reads) {
+            read = reads.computeIfAbsent(key, SharedRead::new);
+            read.readers++;
+        }
+        try {
+            read.open(fileLock);
+        } catch (IOException | RuntimeException e) {
+            read.close();
+            throw e;
+        }
+        return read;
+    }
+
+    /**
+     * @return The number of files currently open for reading.
+     */
+    int openReads() {
+        synchronized (reads) {
+            return reads.size();
+        }
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * A file being read by one or more threads in this JVM.
+     */
+    class SharedRead implements Closeable {
+
+        private final Path path;
+        // Guarded by the reads map:
+        private int readers;
+        // Guarded by this:
+        private FileChannel channel;
+        private FileLock lock;
+
+        SharedRead(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return A channel for reading. Use positional reads: it's shared with other threads.
+         */
+        FileChannel channel() {
+            return channel;
+        }
+
+        private synchronized void open(boolean fileLock) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            if (fileLock && lock == null) {
+                try {
+                    lock = sharedLock(channel);
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    channel = null;
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Leaves the file, closing the channel, and so releasing the lock, if
+         * this is the last reader.
+         */
+        @Override
+        public void close() throws IOException {
+            synchronized (reads) {
+                if (--readers > 0) {
+                    return;
+                }
+                reads.remove(path);
+                // Close before anyone else can open the file, as that may release their lock too:
+                synchronized (this) {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+            }
+        }
+    }
+
+    private static FileLock sharedLock(FileChannel channel) throws IOException {
+
+        // Be lenient in getting a lock:
+        FileLock lock = null;
+        do {
+            try {
+                // Get a shared lock for reading:
+                lock = channel.tryLock(0L, Long.MAX_VALUE, true);
+            } catch (OverlappingFileLockException e) {
+                // Only likely if the same file is reached by another path (e.g. a symlink),
+                // so wait for that to be released rather than read without a lock
+            }
+            if (lock == null) {
+                Serialiser.pause();
+            }
+        } while (lock == null);
+
+        return lock;
+    }
+}
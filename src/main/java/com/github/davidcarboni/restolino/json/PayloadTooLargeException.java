@@ -0,0 +1,15 @@
+package com.github.davidcarboni.restolino.json;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request body is larger than {@link Serialiser#maxRequestSize}. The
+ * {@link com.github.davidcarboni.restolino.api.Router} responds to this with a 413 status.
+ */
+public class PayloadTooLargeException extends IOException {
+
+    public PayloadTooLargeException(long size, long maxSize) {
+        super("Request body of " + (size < 0 ? "more than " + maxSize : String.valueOf(size)) +
+                " bytes exceeds the maximum of " + maxSize + " bytes.");
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.davidcarboni.restolino.json;
 
+import com.github.davidcarboni.restolino.Configuration;
 import com.github.davidcarboni.restolino.framework.Home;
 import com.github.davidcarboni.restolino.framework.NotFound;
 import com.github.davidcarboni.restolino.framework.PostFilter;
@@ -7,34 +8,72 @@ import com.github.davidcarboni.restolino.framework.PreFilter;
 import com.github.davidcarboni.restolino.framework.ServerError;
 import com.github.davidcarboni.restolino.framework.Startup;
 import com.github.davidcarboni.restolino.json.typeadapters.ClassSerialiser;
+import com.github.davidcarboni.restolino.json.typeadapters.DateTypeAdapter;
+import com.github.davidcarboni.restolino.json.typeadapters.InstantTypeAdapter;
+import com.github.davidcarboni.restolino.json.typeadapters.LocalDateTypeAdapter;
 import com.github.davidcarboni.restolino.json.typeadapters.MethodSerialiser;
 import com.github.davidcarboni.restolino.json.typeadapters.ObjectClassSerialser;
+import com.github.davidcarboni.restolino.json.typeadapters.OffsetDateTimeTypeAdapter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.QuotedQualityCSV;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class Serialiser {
 
@@ -42,6 +81,105 @@ public class Serialiser {
 
     private static GsonBuilder builder;
 
+    /**
+     * Incremented when {@link #configureBuilder(Consumer)} changes the
+     * {@link GsonBuilder}, and when reloaded classes are purged, so that a new
+     * {@link Gson} instance is built. Only changed, along with the builder,
+     * while holding the lock on this class.
+     */
+    private static final AtomicLong builderVersion = new AtomicLong();
+
+    /**
+     * The published {@link Gson} instance. {@link Gson} is thread-safe and
+     * caches the type adapters it builds, so we hang on to it until the
+     * builder version changes.
+     */
+    private static volatile GsonSnapshot snapshot;
+
+    /**
+     * Does the actual Json binding. Defaults to Gson.
+     */
+    private static volatile JsonEngine engine = new GsonEngine();
+
+    /**
+     * Alternative encodings, keyed by content type, that clients can ask for
+     * with <code>Accept</code> and <code>Content-Type</code> headers.
+     */
+    private static final Map<String, JsonEngine> encodings = new ConcurrentHashMap<>();
+
+    /**
+     * Responses up to this many bytes are buffered and sent with a
+     * <code>Content-Length</code>. Larger responses are streamed. Zero or less
+     * disables buffering.
+     */
+    public static volatile int responseBufferSize = 1024 * 1024;
+
+    /**
+     * Request bodies with a <code>Content-Length</code> up to this many bytes
+     * are read into a buffer in one go. Larger ones are streamed, so a client
+     * can't make us allocate a large buffer just by declaring a large length.
+     */
+    static final int MAX_BUFFERED_REQUEST = 1024 * 1024;
+
+    /**
+     * The largest request body, in bytes, that will be deserialised. Larger
+     * requests fail with a {@link PayloadTooLargeException} before any parsing
+     * is done. Zero or less (the default) means no limit.
+     */
+    public static volatile long maxRequestSize;
+
+    /**
+     * If true, {@link #serialise(Path, Object)} writes a temp file in the same
+     * directory and renames it over the target, and {@link #deserialise(Path, Class)}
+     * reads without locks or retries.
+     */
+    public static volatile boolean atomicWrites;
+
+    /**
+     * If true, atomic writes are forced to the storage device before they're published.
+     */
+    public static volatile boolean forceWrites;
+
+    /**
+     * If true (the default), file reads and writes take an OS {@link FileLock} as
+     * well as the in-process lock, so they're safe against other processes using
+     * this class. If only this JVM touches the files, this can be switched off to
+     * save the system calls.
+     */
+    public static volatile boolean crossProcessLocks = true;
+
+    /**
+     * Json files of at least this many bytes are memory-mapped when they're
+     * read, rather than read through a buffer. Zero (the default) means never.
+     * <p>
+     * NB on most platforms, a mapped file that's truncated by another process
+     * while it's being read crashes the reading thread, so only use this if
+     * other processes take the same file locks (see {@link #crossProcessLocks})
+     * or use {@link #atomicWrites}.
+     */
+    public static volatile long mapThreshold;
+
+    /**
+     * If true, {@link #serialise(Path, Object)} gzips every file it writes.
+     * Otherwise, only files whose names end in <code>.gz</code> are compressed.
+     * Compressed files are recognised when they're read, whatever they're called.
+     */
+    public static volatile boolean compressWrites;
+
+    /**
+     * Runs bulk reads and writes (see {@link #serialiseAll(Map)} and
+     * {@link #deserialiseAll(Collection, Class)}). Defaults to the common
+     * {@link ForkJoinPool}; set <code>restolino.bulkthreads</code> for a dedicated
+     * pool, which is better suited to blocking file access.
+     */
+    public static volatile Executor bulkExecutor = ForkJoinPool.commonPool();
+
+    private static final PathLocks locks = new PathLocks();
+
+    private static volatile DocumentCache cache;
+
+    private static volatile WriteBehind writeBehind;
+
     // Pattern for Javascript dates that are serialised using .toUTCString:
     public static final String toUTCStringDateFormat = "EEE, dd MMM yyyy HH:mm:ss z";
 
@@ -50,19 +188,28 @@ public class Serialiser {
 
     static {
 
-        // Add some useful default handlers - these are useful if you use DefaultApiDocumentation:
-        getBuilder().registerTypeAdapter(Class.class, new ClassSerialiser());
-        getBuilder().registerTypeAdapter(Method.class, new MethodSerialiser());
-        getBuilder().registerTypeAdapter(Home.class, new ObjectClassSerialser());
-        getBuilder().registerTypeAdapter(NotFound.class, new ObjectClassSerialser());
-        getBuilder().registerTypeAdapter(ServerError.class, new ObjectClassSerialser());
-        getBuilder().registerTypeAdapter(Startup.class, new ObjectClassSerialser());
-        getBuilder().registerTypeAdapter(PreFilter.class, new ObjectClassSerialser());
-        getBuilder().registerTypeAdapter(PostFilter.class, new ObjectClassSerialser());
+        configureBuilder(gsonBuilder -> {
+            // Add some useful default handlers - these are useful if you use DefaultApiDocumentation:
+            gsonBuilder.registerTypeAdapter(Class.class, new ClassSerialiser());
+            gsonBuilder.registerTypeAdapter(Method.class, new MethodSerialiser());
+            gsonBuilder.registerTypeAdapter(Home.class, new ObjectClassSerialser());
+            gsonBuilder.registerTypeAdapter(NotFound.class, new ObjectClassSerialser());
+            gsonBuilder.registerTypeAdapter(ServerError.class, new ObjectClassSerialser());
+            gsonBuilder.registerTypeAdapter(Startup.class, new ObjectClassSerialser());
+            gsonBuilder.registerTypeAdapter(PreFilter.class, new ObjectClassSerialser());
+            gsonBuilder.registerTypeAdapter(PostFilter.class, new ObjectClassSerialser());
 
 
-        // Set a reasonable default for date formatting:
-        getBuilder().setDateFormat(toUTCStringDateFormat);
+            // Set a reasonable default for date formatting. The adapter avoids Gson's
+            // synchronized DateFormat; setDateFormat still covers the java.sql types:
+            gsonBuilder.registerTypeAdapter(Date.class, new DateTypeAdapter());
+            gsonBuilder.setDateFormat(toUTCStringDateFormat);
+
+            // java.time types as ISO-8601:
+            gsonBuilder.registerTypeAdapter(Instant.class, new InstantTypeAdapter());
+            gsonBuilder.registerTypeAdapter(LocalDate.class, new LocalDateTypeAdapter());
+            gsonBuilder.registerTypeAdapter(OffsetDateTime.class, new OffsetDateTimeTypeAdapter());
+        });
     }
 
     /**
@@ -72,8 +219,7 @@ public class Serialiser {
      * @return The Json as a String.
      */
     public static String serialise(Object object) {
-        Gson gson = getBuilder().create();
-        return gson.toJson(object);
+        return engine.toJson(object);
     }
 
     /**
@@ -85,8 +231,7 @@ public class Serialiser {
      * @return A new instance of the given type.
      */
     public static <O> O deserialise(String json, Class<O> type) {
-        Gson gson = getBuilder().create();
-        return gson.fromJson(json, type);
+        return engine.fromJson(json, type);
     }
 
     /**
@@ -100,9 +245,8 @@ public class Serialiser {
     public static void serialise(OutputStream output, Object responseMessage)
             throws IOException {
 
-        Gson gson = getBuilder().create();
-        try (OutputStreamWriter writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
-            gson.toJson(responseMessage, writer);
+        try (OutputStream closing = output) {
+            engine.toJson(responseMessage, closing);
         }
     }
 
@@ -118,9 +262,8 @@ public class Serialiser {
     public static <O> O deserialise(InputStream input,
                                     Class<O> requestMessageType) throws IOException {
 
-        Gson gson = getBuilder().create();
-        try (InputStreamReader streamReader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
-            return gson.fromJson(streamReader, requestMessageType);
+        try (InputStream closing = input) {
+            return engine.fromJson(closing, requestMessageType);
         }
     }
 
@@ -129,18 +272,44 @@ public class Serialiser {
      * {@link Path}. This method will acquire a filesystem lock on the
      * given path in order to avoid corruption in the event that multple
      * threads attempt to write to the same file at the same time.
+     * <p>
+     * If {@link #atomicWrites} is set, this calls
+     * {@link #serialiseAtomically(Path, Object, boolean)} instead.
+     * <p>
+     * If write-behind is on (see {@link #setWriteBehind(long)}), the object is
+     * only written on the next flush, and then only if it hasn't been replaced
+     * by a later write, so don't modify it after passing it in.
      *
      * @param output The Path to serialise to.
      * @param json   The Json to be serialised.
      * @throws IOException If an error occurs in writing the output.
      */
     public static void serialise(Path output, Object json) throws IOException {
+        WriteBehind writeBehind = Serialiser.writeBehind;
+        if (writeBehind != null) {
+            writeBehind.put(output, json);
+            invalidate(output);
+            return;
+        }
+        write(output, json);
+    }
+
+    /**
+     * Writes to the file now, bypassing write-behind.
+     */
+    static void write(Path output, Object json) throws IOException {
+        if (atomicWrites) {
+            writeAtomically(output, json, forceWrites);
+            return;
+        }
+
         Path temp = null;
         try {
             temp = Files.createTempFile(json.getClass().getSimpleName(), ".json");
             writeJsonObjectToFile(temp, output, json);
         } finally {
             deleteTempFile(temp);
+            invalidate(output);
         }
     }
 
@@ -171,25 +340,197 @@ public class Serialiser {
         //  a regression into core publishing services.
 
         // First serialise to a temp file
-        Gson gson = getBuilder().create();
-        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
-            gson.toJson(json, writer);
+        try (OutputStream stream = Files.newOutputStream(temp)) {
+            write(json, stream, compress(output));
         }
 
         // Now do an optimised Channel-to-Channel transfer to the output file:
         long size = Files.size(temp);
+        Lock lock = locks.get(output).writeLock();
+        lock.lock();
         try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.READ);
              FileChannel outputChannel = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
             // NB the lock will be released when the channel is closed:
-            writeLock(outputChannel);
+            if (crossProcessLocks) {
+                writeLock(outputChannel);
+            }
             outputChannel.truncate(0);
             tempChannel.transferTo(0, size, outputChannel);
             outputChannel.truncate(size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Serialises the given object to a temporary file in the same directory as
+     * <code>output</code> and then renames it over <code>output</code> with an
+     * atomic move. Readers see either the previous content or the new content,
+     * never a partial file, so no locks are needed.
+     * <p>
+     * Every process writing to the file needs to do so this way for readers to
+     * be able to rely on it.
+     *
+     * @param output The Path to serialise to.
+     * @param json   The Json to be serialised.
+     * @param force  If true, the content is forced to the storage device before
+     *               it's published, so it survives a crash.
+     * @throws IOException If an error occurs in writing the output.
+     */
+    public static void serialiseAtomically(Path output, Object json, boolean force) throws IOException {
+        Lock lock = lockForWriting(output);
+        try {
+            discardPending(output);
+            writeAtomically(output, json, force);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeAtomically(Path output, Object json, boolean force) throws IOException {
+        Path temp = createSiblingTempFile(output);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                write(json, Channels.newOutputStream(channel), compress(output));
+                if (force) {
+                    channel.force(true);
+                }
+            }
+            copyPermissions(output, temp);
+            publish(temp, output);
+        } finally {
+            deleteTempFile(temp);
+            invalidate(output);
+        }
+    }
+
+    /**
+     * @return If the file should be gzipped: either its name ends in
+     * <code>.gz</code> or {@link #compressWrites} is set.
+     */
+    static boolean compress(Path output) {
+        return compressWrites || StringUtils.endsWithIgnoreCase(output.getFileName().toString(), ".gz");
+    }
+
+    /**
+     * Streams Json to the given output, gzipping it on the way if requested.
+     * The output is left open, so the caller can sync it before closing it.
+     */
+    private static void write(Object json, OutputStream output, boolean compress) throws IOException {
+        OutputStream stream = CloseShieldOutputStream.wrap(output);
+        if (compress) {
+            stream = new GZIPOutputStream(stream, 8192);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            engine.toJson(json, writer);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to the given target, so it can be
+     * renamed over it. It's a hidden file so it won't be picked up by anything
+     * listing the directory for Json files.
+     */
+    static Path createSiblingTempFile(Path output) throws IOException {
+        Path directory = output.toAbsolutePath().getParent();
+        String name = "." + output.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp";
+        return Files.createFile(directory.resolve(name));
+    }
+
+    /**
+     * Renames the temp file over the target atomically. If the filesystem can't
+     * do that, falls back to a plain replacing move.
+     */
+    static void publish(Path temp, Path output) throws IOException {
+        try {
+            Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOG.warn("atomic move is not supported for {}, falling back to a non-atomic replace", output);
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * We don't rely on the file's modified time alone to spot our own writes,
+     * because it can be coarse-grained, so we drop the file from the cache explicitly.
+     */
+    private static void invalidate(Path output) {
+        DocumentCache cache = Serialiser.cache;
+        if (cache != null) {
+            cache.invalidate(output);
+        }
+    }
+
+    /**
+     * Turns write-behind on or off for {@link #serialise(Path, Object)}. When it's
+     * on, only the latest object written to each path is kept and it's written
+     * out on the given interval (and on shutdown). Reads of the path in this JVM
+     * see the pending object. Other processes won't see it until it's written.
+     *
+     * @param intervalMillis How often to write pending objects. Zero turns
+     *                       write-behind off, writing anything that's pending.
+     */
+    public static void setWriteBehind(long intervalMillis) {
+        WriteBehind previous = writeBehind;
+        writeBehind = intervalMillis > 0 ? new WriteBehind(intervalMillis) : null;
+        if (previous != null) {
+            previous.stop();
+        }
+    }
+
+    /**
+     * Writes anything that's waiting to be written by write-behind.
+     */
+    public static void flush() {
+        WriteBehind writeBehind = Serialiser.writeBehind;
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Takes the in-process write lock for a file. Direct writes hold it while
+     * they discard what's pending and write, and write-behind holds it while it
+     * checks an entry is still pending and writes it, so a flush can never
+     * overwrite a direct write with an older version.
+     *
+     * @return The lock, which the caller must unlock.
+     */
+    static Lock lockForWriting(Path output) {
+        Lock lock = locks.get(output).writeLock();
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * A direct write supersedes anything that's pending for the same file.
+     * Hold {@link #lockForWriting(Path)} until the direct write is done.
+     */
+    static void discardPending(Path output) {
+        WriteBehind writeBehind = Serialiser.writeBehind;
+        if (writeBehind != null) {
+            writeBehind.discard(output);
+        }
+    }
+
+    /**
+     * Keeps the target's permissions when it's replaced, where the filesystem supports it.
+     */
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (Files.exists(from) && Files.getFileStore(to).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
         }
     }
 
     /**
      * Deserialises the given {@link InputStream} to a JSON String.
+     * <p>
+     * If {@link #atomicWrites} is set, files are only ever replaced whole, so
+     * this reads without locking or retrying.
+     * <p>
+     * If a {@link DocumentCache} has been set up (see {@link #getCache()}), files
+     * that haven't changed since they were last read come from the cache. If
+     * write-behind is on, a write that's still pending is read instead of the file.
      *
      * @param input    The stream to deserialise.
      * @param jsonType The object type to deserialise into.
@@ -198,6 +539,28 @@ public class Serialiser {
      * @throws IOException If an error occurs in reading from the input stream.
      */
     public static <O> O deserialise(Path input, Class<O> jsonType) throws IOException {
+        WriteBehind writeBehind = Serialiser.writeBehind;
+        if (writeBehind != null) {
+            Object pending = writeBehind.get(input);
+            if (pending != null) {
+                // Convert, rather than share, the pending object:
+                return engine.fromJson(engine.toJson(pending), jsonType);
+            }
+        }
+        DocumentCache cache = Serialiser.cache;
+        if (cache != null) {
+            return cache.get(input, jsonType);
+        }
+        return read(input, jsonType);
+    }
+
+    private static <O> O read(Path input, Class<O> jsonType) throws IOException {
+        if (atomicWrites) {
+            try (FileChannel inputChannel = FileChannel.open(input, StandardOpenOption.READ);
+                 Reader reader = newReader(inputChannel)) {
+                return engine.fromJson(reader, jsonType);
+            }
+        }
         return deserialise(input, jsonType, 0);
     }
 
@@ -216,21 +579,23 @@ public class Serialiser {
         //if (attempt > 0)
         //    System.out.println("Retrying deserialisation.. (" + attempt + ")");
 
-        Gson gson = getBuilder().create();
-        try (FileChannel inputChannel = FileChannel.open(input, StandardOpenOption.READ)) {
-            // NB the lock will be released when the channel is closed:
-            readLock(inputChannel);
-            try (Reader reader = new BufferedReader(Channels.newReader(inputChannel, StandardCharsets.UTF_8.name()))) {
-                result = gson.fromJson(reader, jsonType);
-            } catch (JsonSyntaxException | JsonIOException | NumberFormatException e) {
-                // Very occasionally, with 1000 threads, the content comes back invalid, so we'll retry.
+        Lock lock = locks.get(input).readLock();
+        lock.lock();
+        // Threads reading the same file share a channel, and the file lock, if any:
+        try (PathLocks.SharedRead read = locks.read(input, crossProcessLocks)) {
+            try (Reader reader = newReader(read.channel())) {
+                result = engine.fromJson(reader, jsonType);
+            } catch (JsonSyntaxException | JsonIOException | UncheckedIOException | NumberFormatException e) {
+                // Very occasionally the content comes back invalid (e.g. another process is writing), so we'll retry.
                 if (attempt >= 5) {
                     throw e;
                 }
             }
+        } finally {
+            lock.unlock();
         }
 
-        // Very occasionally, with 1000 threads, no content is read so we'll retry if the result is null.
+        // Very occasionally no content is read so we'll retry if the result is null.
         if (result == null && attempt < 5) {
             result = deserialise(input, jsonType, ++attempt);
         }
@@ -238,9 +603,148 @@ public class Serialiser {
         return result;
     }
 
+    /**
+     * Streams the elements of a file containing a top-level Json array, reading
+     * them one at a time so that the whole file never needs to be in memory.
+     * Use <code>.parallel()</code> to process elements on several cores: the
+     * file is still parsed in order, but batches of parsed elements are handed
+     * out to other threads.
+     * <p>
+     * Elements are parsed with Gson (see {@link #getGson()}), whichever
+     * {@link JsonEngine} is configured. The file isn't locked while it's being
+     * streamed, so it shouldn't be rewritten in place (see {@link #atomicWrites}).
+     * Close the stream when you're done with it.
+     *
+     * @param input The file to read.
+     * @param type  The type of the array elements.
+     * @param <T>   The element type.
+     * @return A stream of the array elements, in order.
+     * @throws IOException If the file can't be opened.
+     */
+    public static <T> Stream<T> stream(Path input, Class<T> type) throws IOException {
+        return stream(input, type, 1024);
+    }
+
+    /**
+     * Streams the elements of a file containing a top-level Json array.
+     *
+     * @param input     The file to read.
+     * @param type      The type of the array elements.
+     * @param batchSize The number of elements handed to each thread when the stream is processed in parallel.
+     * @param <T>       The element type.
+     * @return A stream of the array elements, in order.
+     * @throws IOException If the file can't be opened.
+     * @see #stream(Path, Class)
+     */
+    public static <T> Stream<T> stream(Path input, Class<T> type, int batchSize) throws IOException {
+        FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+        JsonReader reader;
+        try {
+            reader = new JsonReader(newReader(channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return StreamSupport.stream(new JsonArraySpliterator<>(reader, getGson(), type, batchSize), false)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Serialises many objects to files in parallel, using {@link #bulkExecutor}.
+     * Each file is written as {@link #serialise(Path, Object)} would. If
+     * {@link #forceWrites} is set, each directory is synced once, after all the
+     * files in it have been written.
+     *
+     * @param files The files to write and the object to serialise to each one.
+     * @param <T>   The type of object to serialise.
+     * @return The outcome for each file. A failure on one file doesn't stop the others.
+     */
+    public static <T> BulkResult<T> serialiseAll(Map<Path, T> files) {
+        return serialiseAll(files, bulkExecutor);
+    }
+
+    /**
+     * Serialises many objects to files in parallel, using the given {@link Executor}.
+     *
+     * @param files    The files to write and the object to serialise to each one.
+     * @param executor Runs the writes.
+     * @param <T>      The type of object to serialise.
+     * @return The outcome for each file. A failure on one file doesn't stop the others.
+     * @see #serialiseAll(Map)
+     */
+    public static <T> BulkResult<T> serialiseAll(Map<Path, T> files, Executor executor) {
+        return Bulk.serialise(files, executor);
+    }
+
+    /**
+     * Deserialises many files in parallel, using {@link #bulkExecutor}. Each file
+     * is read as {@link #deserialise(Path, Class)} would, so the cache is used if there is one.
+     *
+     * @param files The files to read.
+     * @param type  The type to deserialise each file into.
+     * @param <O>   The type to deserialise to.
+     * @return The outcome for each file. A failure on one file doesn't stop the others.
+     */
+    public static <O> BulkResult<O> deserialiseAll(Collection<Path> files, Class<O> type) {
+        return deserialiseAll(files, type, bulkExecutor);
+    }
+
+    /**
+     * Deserialises many files in parallel, using the given {@link Executor}.
+     *
+     * @param files    The files to read.
+     * @param type     The type to deserialise each file into.
+     * @param executor Runs the reads.
+     * @param <O>      The type to deserialise to.
+     * @return The outcome for each file. A failure on one file doesn't stop the others.
+     * @see #deserialiseAll(Collection, Class)
+     */
+    public static <O> BulkResult<O> deserialiseAll(Collection<Path> files, Class<O> type, Executor executor) {
+        return Bulk.deserialise(files, type, executor);
+    }
+
+    /**
+     * Files of at least {@link #mapThreshold} bytes are memory-mapped and
+     * decoded straight from the mapping. Smaller files are read through a
+     * buffer, because mapping has a fixed cost that only pays off for large files.
+     */
+    private static Reader newReader(FileChannel channel) throws IOException {
+        if (isGzip(channel)) {
+            return new InputStreamReader(new GZIPInputStream(new ChannelInputStream(channel), 8192), StandardCharsets.UTF_8);
+        }
+        long threshold = mapThreshold;
+        long size = channel.size();
+        if (threshold > 0 && size >= threshold && size <= Integer.MAX_VALUE) {
+            return new ByteBufferReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        return new BufferedReader(new InputStreamReader(new ChannelInputStream(channel), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks for the gzip magic number, so compressed files are read
+     * correctly whatever they're called. Json can't start with these bytes.
+     */
+    private static boolean isGzip(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+            // Keep reading
+        }
+        return magic.position() == 2 &&
+                (magic.get(0) & 0xff) == (GZIPInputStream.GZIP_MAGIC & 0xff) &&
+                (magic.get(1) & 0xff) == (GZIPInputStream.GZIP_MAGIC >>> 8);
+    }
+
     /**
      * Serialises the given object to Json and writes it to the given
-     * {@link HttpServletResponse}.
+     * {@link HttpServletResponse}. Responses up to {@link #responseBufferSize}
+     * bytes are sent in one write with a <code>Content-Length</code>.
      *
      * @param response        The http response to serialise to.
      * @param responseMessage The message to be serialised.
@@ -249,50 +753,365 @@ public class Serialiser {
     public static void serialise(HttpServletResponse response,
                                  Object responseMessage) throws IOException {
 
-        response.setContentType("application/json");
-        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
-        serialise(response.getOutputStream(), responseMessage);
+        serialise(response, responseMessage, engine);
+    }
+
+    /**
+     * Serialises the given object and writes it to the given
+     * {@link HttpServletResponse}, using the encoding that best matches the
+     * request's <code>Accept</code> header (see {@link #addEncoding(JsonEngine)}).
+     * Json is used unless the client prefers one of the other registered encodings.
+     *
+     * @param request         The http request, for content negotiation.
+     * @param response        The http response to serialise to.
+     * @param responseMessage The message to be serialised.
+     * @throws IOException If an error occurs in writing the output.
+     */
+    public static void serialise(HttpServletRequest request, HttpServletResponse response,
+                                 Object responseMessage) throws IOException {
+
+        if (!encodings.isEmpty()) {
+            response.addHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT.asString());
+        }
+        serialise(response, responseMessage, responseEngine(request));
+    }
+
+    private static void serialise(HttpServletResponse response, Object responseMessage,
+                                  JsonEngine engine) throws IOException {
+
+        response.setContentType(engine.contentType());
+        if (engine.isText()) {
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        }
+        OutputStream output;
+        if (responseBufferSize > 0) {
+            output = new BufferedResponseStream(response, BufferPools.pool(response), responseBufferSize);
+        } else {
+            output = response.getOutputStream();
+        }
+        try (OutputStream closing = output) {
+            engine.toJson(responseMessage, closing);
+        }
     }
 
     /**
      * Deserialises the given {@link HttpServletRequest} to a JSON String.
+     * If the request has a <code>Content-Length</code> of up to
+     * {@value #MAX_BUFFERED_REQUEST} bytes, the body is read into a pooled
+     * buffer in one go and parsed from there. Otherwise it's streamed. If the
+     * <code>Content-Type</code> is one of the encodings registered with
+     * {@link #addEncoding(JsonEngine)}, that encoding is used instead of Json.
      *
      * @param request            The request to deserialise.
      * @param requestMessageType The message type to deserialise into.
      * @param <O>                The type to deserialise to.
      * @return A new instance of the given type.
-     * @throws IOException If an error occurs in reading from the request input stream.
+     * @throws IOException               If an error occurs in reading from the request input stream.
+     * @throws PayloadTooLargeException If the body is larger than {@link #maxRequestSize}.
      */
     public static <O> O deserialise(HttpServletRequest request,
                                     Class<O> requestMessageType) throws IOException {
 
-        return deserialise(request.getInputStream(), requestMessageType);
+        JsonEngine engine = requestEngine(request);
+        long maxSize = maxRequestSize;
+        long contentLength = request.getContentLengthLong();
+        if (maxSize > 0 && contentLength > maxSize) {
+            throw new PayloadTooLargeException(contentLength, maxSize);
+        }
+
+        if (isBuffered(contentLength)) {
+            // Read the whole body in one go and parse it from the array:
+            ByteBufferPool pool = BufferPools.pool(request);
+            ByteBuffer buffer = pool.acquire((int) contentLength, false);
+            try (InputStream input = request.getInputStream()) {
+                if (!buffer.hasArray() || buffer.capacity() < contentLength) {
+                    pool.release(buffer);
+                    buffer = ByteBuffer.allocate((int) contentLength);
+                }
+                int length = IOUtils.read(input, buffer.array(), buffer.arrayOffset(), (int) contentLength);
+                return engine.fromJson(buffer.array(), buffer.arrayOffset(), length, requestMessageType);
+            } finally {
+                pool.release(buffer);
+            }
+        }
+
+        // Unknown or large length, so stream it, but still enforce the limit
+        // (the client may send more than it declared):
+        InputStream input = request.getInputStream();
+        if (maxSize > 0) {
+            input = new LimitedInputStream(input, maxSize);
+        }
+        try (InputStream closing = input) {
+            return engine.fromJson(closing, requestMessageType);
+        } catch (RuntimeException e) {
+            // Gson wraps IOExceptions from the stream:
+            PayloadTooLargeException tooLarge = ExceptionUtils.throwableOfType(e, PayloadTooLargeException.class);
+            if (tooLarge != null) {
+                throw tooLarge;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param contentLength The declared length of a request body.
+     * @return If the body is small enough to read into a buffer in one go, true.
+     */
+    static boolean isBuffered(long contentLength) {
+        return contentLength > 0 && contentLength <= MAX_BUFFERED_REQUEST;
+    }
+
+    /**
+     * Applies the Json settings from the given {@link Configuration}.
+     *
+     * @param configuration The resolved configuration.
+     */
+    public static void configure(Configuration configuration) {
+        setEngine(newEngine(configuration.jsonEngine));
+        responseBufferSize = configuration.responseBufferSize;
+        maxRequestSize = configuration.maxRequestSize;
+        atomicWrites = configuration.atomicWrites;
+        forceWrites = configuration.forceWrites;
+        crossProcessLocks = configuration.crossProcessLocks;
+        mapThreshold = configuration.mapThreshold;
+        compressWrites = configuration.compressWrites;
+        if (configuration.writeBehind > 0) {
+            setWriteBehind(configuration.writeBehind);
+        }
+        if (configuration.bulkThreads > 0) {
+            bulkExecutor = new ForkJoinPool(configuration.bulkThreads);
+        }
+        if (configuration.jsonCacheSize > 0) {
+            DocumentCache cache = newCache(configuration.jsonCacheSize, configuration.jsonCacheCopy);
+            if (StringUtils.isNotBlank(configuration.jsonCacheWatch)) {
+                try {
+                    cache.watch(Paths.get(configuration.jsonCacheWatch));
+                } catch (IOException | RuntimeException e) {
+                    LOG.error("Unable to watch {} for changes to cached Json files", configuration.jsonCacheWatch, e);
+                }
+            }
+            setCache(cache);
+        }
+        for (String encoding : configuration.encodings) {
+            try {
+                addEncoding(JacksonEngine.forEncoding(encoding));
+            } catch (IllegalArgumentException | LinkageError e) {
+                LOG.error("Unable to add encoding {} (is the Jackson data format on the classpath?)", encoding, e);
+            }
+        }
+    }
+
+    /**
+     * Drops everything cached for classes loaded by the given class loader, so
+     * that it can be garbage collected after a reload. {@link Gson} caches type
+     * adapters by type, so a new instance is built. Then each {@link JsonEngine}
+     * and the {@link DocumentCache} are purged.
+     *
+     * @param classLoader The class loader that's being retired.
+     */
+    public static void purge(ClassLoader classLoader) {
+        synchronized (Serialiser.class) {
+            builderVersion.incrementAndGet();
+        }
+        engine.purge(classLoader);
+        for (JsonEngine encoding : encodings.values()) {
+            encoding.purge(classLoader);
+        }
+        DocumentCache cache = Serialiser.cache;
+        if (cache != null) {
+            cache.purge(classLoader);
+        }
+    }
+
+    /**
+     * @return The {@link DocumentCache} used by {@link #deserialise(Path, Class)}
+     * (e.g. to check its hit ratio), or null if files aren't being cached.
+     */
+    public static DocumentCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param cache The {@link DocumentCache} to use from now on, or null to stop caching.
+     */
+    public static void setCache(DocumentCache cache) {
+        Serialiser.cache = cache;
+    }
+
+    /**
+     * Creates a {@link DocumentCache} that reads files the way {@link #deserialise(Path, Class)} does.
+     *
+     * @param maxBytes   The maximum total size of the files to cache.
+     * @param copyOnRead If true, each read gets its own copy of the cached object.
+     * @return A new cache. Pass it to {@link #setCache(DocumentCache)} to use it.
+     */
+    public static DocumentCache newCache(long maxBytes, boolean copyOnRead) {
+        return new DocumentCache(maxBytes, copyOnRead, Serialiser::read);
+    }
+
+    /**
+     * @return The {@link JsonEngine} in use.
+     */
+    public static JsonEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @param engine The {@link JsonEngine} to use from now on.
+     */
+    public static void setEngine(JsonEngine engine) {
+        LOG.info("Using Json engine {}", engine.getClass().getSimpleName());
+        Serialiser.engine = engine;
+    }
+
+    /**
+     * Registers an alternative encoding, such as CBOR, that clients can choose
+     * with <code>Accept</code> and <code>Content-Type</code> headers. Json
+     * remains the default.
+     *
+     * @param engine An engine for the encoding. It's registered under {@link JsonEngine#contentType()}.
+     */
+    public static void addEncoding(JsonEngine engine) {
+        LOG.info("Adding encoding {} ({})", engine.contentType(), engine.getClass().getSimpleName());
+        encodings.put(StringUtils.lowerCase(engine.contentType()), engine);
+    }
+
+    /**
+     * @param contentType The content type to stop supporting.
+     */
+    public static void removeEncoding(String contentType) {
+        encodings.remove(StringUtils.lowerCase(contentType));
+    }
+
+    /**
+     * Chooses an engine for the response, based on the request <code>Accept</code> header.
+     *
+     * @param request The request.
+     * @return The registered engine the client most prefers, or the default (Json) engine.
+     */
+    static JsonEngine responseEngine(HttpServletRequest request) {
+        if (!encodings.isEmpty()) {
+            Enumeration<String> accept = request.getHeaders(HttpHeader.ACCEPT.asString());
+            if (accept != null && accept.hasMoreElements()) {
+                QuotedQualityCSV values = new QuotedQualityCSV();
+                while (accept.hasMoreElements()) {
+                    values.addValue(accept.nextElement());
+                }
+                for (String value : values) {
+                    String mediaType = mediaType(value);
+                    JsonEngine encoding = encodings.get(mediaType);
+                    if (encoding != null) {
+                        return encoding;
+                    } else if (StringUtils.equalsAny(mediaType, "application/json", "application/*", "*/*")) {
+                        break;
+                    }
+                }
+            }
+        }
+        return engine;
     }
 
     /**
+     * Chooses an engine for the request body, based on the request <code>Content-Type</code> header.
+     *
+     * @param request The request.
+     * @return The registered engine for the content type, or the default (Json) engine.
+     */
+    static JsonEngine requestEngine(HttpServletRequest request) {
+        if (!encodings.isEmpty() && request.getContentType() != null) {
+            JsonEngine encoding = encodings.get(mediaType(request.getContentType()));
+            if (encoding != null) {
+                return encoding;
+            }
+        }
+        return engine;
+    }
+
+    private static String mediaType(String value) {
+        return StringUtils.lowerCase(StringUtils.trim(StringUtils.substringBefore(value, ";")));
+    }
+
+    /**
+     * Creates a {@link JsonEngine} by name.
+     *
+     * @param name "gson", "jackson" or the class name of a {@link JsonEngine} implementation.
+     * @return A new engine. If the name can't be resolved, a {@link GsonEngine}.
+     */
+    static JsonEngine newEngine(String name) {
+        String className;
+        if (StringUtils.isBlank(name) || StringUtils.equalsIgnoreCase("gson", name)) {
+            return new GsonEngine();
+        } else if (StringUtils.equalsIgnoreCase("jackson", name)) {
+            className = JacksonEngine.class.getName();
+        } else {
+            className = name;
+        }
+
+        try {
+            return (JsonEngine) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            LOG.error("Unable to create Json engine {} (is it on the classpath?). Defaulting to Gson.", name, e);
+            return new GsonEngine();
+        }
+    }
+
+    /**
+     * Gives you access to the {@link GsonBuilder}. Changes made through it are
+     * only seen by {@link #getGson()} once the cached {@link Gson} instance is
+     * rebuilt, which happens after {@link #configureBuilder(Consumer)} or a
+     * reload, so they're only reliable before Json is first used.
+     *
      * @return A lazily instantiated and cached {@link GsonBuilder}.
+     * @deprecated Use {@link #configureBuilder(Consumer)} to register type
+     * adapters, so the change is picked up straight away.
      */
-    public static GsonBuilder getBuilder() {
+    @Deprecated
+    public static synchronized GsonBuilder getBuilder() {
+        return builder();
+    }
+
+    private static GsonBuilder builder() {
         if (builder == null) {
             builder = new GsonBuilder();
         }
         return builder;
     }
 
-    private static FileLock readLock(FileChannel channel) throws IOException {
+    /**
+     * Changes the {@link GsonBuilder} safely, even if {@link #getGson()} is
+     * being called at the same time. The changes are made while holding the
+     * lock that guards creating {@link Gson} instances, and the current
+     * instance is invalidated once they're done.
+     *
+     * @param changes Changes to make, e.g. registering type adapters.
+     */
+    public static synchronized void configureBuilder(Consumer<GsonBuilder> changes) {
+        // Before, so callers wait for the changes rather than use the old instance,
+        // and after, so an instance created part-way through isn't kept:
+        builderVersion.incrementAndGet();
+        changes.accept(builder());
+        builderVersion.incrementAndGet();
+    }
 
-        // Be lenient in getting a lock:
-        FileLock lock = null;
-        do {
-            try {
-                // Get a shared lock for reading:
-                lock = channel.tryLock(0L, Long.MAX_VALUE, true);
-            } catch (OverlappingFileLockException e) {
-                pause();
+    /**
+     * @return A {@link Gson} instance created from the {@link GsonBuilder}. The
+     * same instance is returned (and so its type adapter cache is reused) until
+     * {@link #configureBuilder(Consumer)} is called again.
+     */
+    public static Gson getGson() {
+        GsonSnapshot current = snapshot;
+        if (current == null || current.version != builderVersion.get()) {
+            synchronized (Serialiser.class) {
+                current = snapshot;
+                long version = builderVersion.get();
+                if (current == null || current.version != version) {
+                    current = new GsonSnapshot(builder().create(), version);
+                    snapshot = current;
+                    LOG.debug("created Gson instance for builder version {}", version);
+                }
             }
-        } while (lock == null);
-
-        return lock;
+        }
+        return current.gson;
     }
 
     private static FileLock writeLock(FileChannel channel) throws IOException {
@@ -304,6 +1123,9 @@ public class Serialiser {
                 // Get an exclusive lock for writing
                 lock = channel.tryLock();
             } catch (OverlappingFileLockException e) {
+                // Only likely if the same file is reached by another path (e.g. a symlink)
+            }
+            if (lock == null) {
                 pause();
             }
         } while (lock == null);
@@ -311,11 +1133,63 @@ public class Serialiser {
         return lock;
     }
 
-    private static void pause() {
+    static void pause() {
         try {
             Thread.sleep(1);
         } catch (InterruptedException e1) {
             // Meh.
         }
     }
+
+    /**
+     * Fails with a {@link PayloadTooLargeException} once more than the given number of bytes has been read.
+     */
+    static class LimitedInputStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long count;
+
+        LimitedInputStream(InputStream input, long maxSize) {
+            super(input);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                count(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                count(result);
+            }
+            return result;
+        }
+
+        private void count(int read) throws PayloadTooLargeException {
+            count += read;
+            if (count > maxSize) {
+                throw new PayloadTooLargeException(-1, maxSize);
+            }
+        }
+    }
+
+    /**
+     * An immutable pairing of a {@link Gson} instance with the builder version it was created from.
+     */
+    private static class GsonSnapshot {
+        final Gson gson;
+        final long version;
+
+        GsonSnapshot(Gson gson, long version) {
+            this.gson = gson;
+            this.version = version;
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.slf4j.Logger;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Holds the latest object written to each path and writes them out on an
+ * interval, so that a file rewritten many times a second only hits the disk
+ * once per interval. The last write wins: intermediate versions are never written.
+ * <p>
+ * Anything still pending is written when the JVM shuts down.
+ */
+class WriteBehind {
+
+    private static final Logger log = getLogger(WriteBehind.class);
+
+    private final Map<Path, Object> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook = new Thread(this::flush, "Write-behind shutdown flush");
+
+    /**
+     * @param intervalMillis How often to write pending objects.
+     */
+    WriteBehind(long intervalMillis) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    void put(Path path, Object json) {
+        pending.put(key(path), json);
+    }
+
+    /**
+     * @return The object waiting to be written to the given path, or null if there isn't one.
+     */
+    Object get(Path path) {
+        return pending.get(key(path));
+    }
+
+    /**
+     * Drops anything waiting to be written to the given path, because it's being written directly.
+     */
+    void discard(Path path) {
+        pending.remove(key(path));
+    }
+
+    /**
+     * Writes everything that's pending. Each entry is only removed if it hasn't been
+     * replaced while it was being written, so a newer version will be written next time.
+     * If a write fails, the entry stays pending and is tried again.
+     * <p>
+     * Each file is written under its in-process write lock, and only if the entry is
+     * still pending once the lock is held: a direct write may have discarded it and
+     * written a newer version in the meantime.
+     */
+    synchronized void flush() {
+        for (Map.Entry<Path, Object> entry : pending.entrySet()) {
+            Lock lock = Serialiser.lockForWriting(entry.getKey());
+            try {
+                if (pending.get(entry.getKey()) == entry.getValue()) {
+                    Serialiser.write(entry.getKey(), entry.getValue());
+                    pending.remove(entry.getKey(), entry.getValue());
+                }
+            } catch (Exception e) {
+                log.error("Error writing {}. Will try again.", entry.getKey(), e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stops the scheduled writes and writes anything that's pending.
+     */
+    void stop() {
+        scheduler.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, so the hook will flush
+        }
+        flush();
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
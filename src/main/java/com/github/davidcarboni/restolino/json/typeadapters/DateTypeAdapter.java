@@ -0,0 +1,62 @@
+package com.github.davidcarboni.restolino.json.typeadapters;
+
+import com.github.davidcarboni.restolino.json.Serialiser;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.TextStyle;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Custom serialiser for {@link Date} that uses {@link Serialiser#toUTCStringDateFormat}
+ * in the default time zone, as Gson's <code>setDateFormat</code> does, but with an
+ * immutable {@link DateTimeFormatter} rather than a shared, synchronized
+ * {@link java.text.SimpleDateFormat}, so request threads don't contend on it.
+ * <p>
+ * As with Gson, ISO-8601 dates are also accepted when parsing.
+ */
+public class DateTypeAdapter extends StringTypeAdapter<Date> {
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final DateTimeFormatter formatter = new DateTimeFormatterBuilder()
+            .appendPattern(StringUtils.removeEnd(Serialiser.toUTCStringDateFormat, "z"))
+            // Short zone names are ambiguous (e.g. BST), so prefer the default zone, as SimpleDateFormat does:
+            .appendZoneText(TextStyle.SHORT, Collections.singleton(zone))
+            .toFormatter(Locale.US)
+            .withZone(zone);
+
+    @Override
+    public String format(Date value) {
+        return formatter.format(value.toInstant());
+    }
+
+    @Override
+    public Date parse(String value) {
+        try {
+            return Date.from(ZonedDateTime.parse(value, formatter).toInstant());
+        } catch (DateTimeParseException e) {
+            return parseIso(value, e);
+        }
+    }
+
+    private Date parseIso(String value, DateTimeParseException original) {
+        try {
+            return Date.from(OffsetDateTime.parse(value).toInstant());
+        } catch (DateTimeParseException e) {
+            try {
+                return Date.from(LocalDate.parse(value).atStartOfDay(zone).toInstant());
+            } catch (DateTimeParseException e2) {
+                throw original;
+            }
+        }
+    }
+}
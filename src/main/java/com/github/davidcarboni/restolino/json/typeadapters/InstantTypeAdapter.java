@@ -0,0 +1,19 @@
+package com.github.davidcarboni.restolino.json.typeadapters;
+
+import java.time.Instant;
+
+/**
+ * Custom serialiser for {@link Instant} that uses ISO-8601 in UTC, e.g. <code>2015-06-01T12:30:00Z</code>.
+ */
+public class InstantTypeAdapter extends StringTypeAdapter<Instant> {
+
+    @Override
+    public String format(Instant value) {
+        return value.toString();
+    }
+
+    @Override
+    public Instant parse(String value) {
+        return Instant.parse(value);
+    }
+}
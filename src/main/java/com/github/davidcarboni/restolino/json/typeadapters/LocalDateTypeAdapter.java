@@ -0,0 +1,19 @@
+package com.github.davidcarboni.restolino.json.typeadapters;
+
+import java.time.LocalDate;
+
+/**
+ * Custom serialiser for {@link LocalDate} that uses ISO-8601, e.g. <code>2015-06-01</code>.
+ */
+public class LocalDateTypeAdapter extends StringTypeAdapter<LocalDate> {
+
+    @Override
+    public String format(LocalDate value) {
+        return value.toString();
+    }
+
+    @Override
+    public LocalDate parse(String value) {
+        return LocalDate.parse(value);
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.davidcarboni.restolino.json.typeadapters;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Custom serialiser for {@link OffsetDateTime} that uses ISO-8601 with the offset,
+ * e.g. <code>2015-06-01T12:30:00+01:00</code>.
+ */
+public class OffsetDateTimeTypeAdapter extends StringTypeAdapter<OffsetDateTime> {
+
+    @Override
+    public String format(OffsetDateTime value) {
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(value);
+    }
+
+    @Override
+    public OffsetDateTime parse(String value) {
+        return OffsetDateTime.parse(value);
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.davidcarboni.restolino.json.typeadapters;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Base for type adapters that represent a value as a Json string. The
+ * {@link #format(Object)} and {@link #parse(String)} methods are also used by
+ * {@link com.github.davidcarboni.restolino.json.JacksonEngine}, so both engines
+ * produce the same output.
+ *
+ * @param <T> The type this adapter handles.
+ */
+public abstract class StringTypeAdapter<T> extends TypeAdapter<T> {
+
+    /**
+     * @param value The value to format. Never null.
+     * @return The string representation.
+     */
+    public abstract String format(T value);
+
+    /**
+     * @param value The string representation.
+     * @return The parsed value.
+     * @throws DateTimeParseException (or another runtime exception) if the value can't be parsed.
+     */
+    public abstract T parse(String value);
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(format(value));
+        }
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String value = in.nextString();
+        try {
+            return parse(value);
+        } catch (RuntimeException e) {
+            throw new JsonSyntaxException("Failed parsing '" + value + "' at path " + in.getPreviousPath(), e);
+        }
+    }
+}
@@ -1,14 +1,35 @@
 package com.github.davidcarboni.restolino.reload;
 
 import com.github.davidcarboni.restolino.Main;
+import javassist.bytecode.ClassFile;
 import org.apache.commons.lang3.StringUtils;
 import org.reflections.Reflections;
+import org.reflections.Store;
+import org.reflections.scanners.Scanner;
+import org.reflections.scanners.Scanners;
 import org.reflections.util.ClasspathHelper;
 import org.reflections.util.ConfigurationBuilder;
 import org.slf4j.Logger;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -17,21 +38,299 @@ public class ClassFinder {
     private static final Logger log = getLogger(ClassFinder.class);
     private static ClassLoader classLoader;
 
+    /**
+     * The scan results for the reloadable classes, kept so that a reload only
+     * needs to re-read the class files that have changed.
+     */
+    private static Store index;
+    private static Set<Scanner> scanners;
+
     public static Reflections newReflections() {
         if (classLoader == null) {
             classLoader = ClassFinder.class.getClassLoader();
         }
         if (Main.configuration.classesReloadable) {
             ClassLoader reloadableClassLoader = new URLClassLoader(new URL[]{Main.configuration.classesUrl}, classLoader);
-            return createReflections(reloadableClassLoader, Main.configuration.packagePrefix);
+            Reflections reflections = createReflections(reloadableClassLoader, Main.configuration.packagePrefix);
+            synchronized (ClassFinder.class) {
+                index = copy(reflections.getStore());
+                scanners = reflections.getConfiguration().getScanners();
+            }
+            return reflections;
+        } else if (Main.configuration.deployUrl != null) {
+            return newDeployment();
         } else {
+            Reflections reflections = Main.configuration.classIndex ? fromIndex(classLoader) : null;
+            if (reflections != null) {
+                return reflections;
+            }
             return createReflections(classLoader, null);
         }
     }
 
+    /**
+     * Uses the {@value IndexProcessor#INDEX} in each jar or directory that has
+     * one, and scans the rest of the classpath, which may not have been
+     * compiled with {@link IndexProcessor}.
+     *
+     * @param classLoader The class loader to find and load classes from.
+     * @return A new {@link Reflections} instance, or null if there's no index.
+     */
+    static Reflections fromIndex(ClassLoader classLoader) {
+        Set<String> indexed = new HashSet<>();
+        Store store = loadIndex(classLoader, indexed);
+        if (store == null) {
+            return null;
+        }
+        Collection<URL> unindexed = new ArrayList<>();
+        for (URL url : ClasspathHelper.forClassLoader(classLoader)) {
+            if (!indexed.contains(root(url.toExternalForm()))) {
+                unindexed.add(url);
+            }
+        }
+        if (unindexed.isEmpty()) {
+            Reflections reflections = new Reflections(store);
+            ((ConfigurationBuilder) reflections.getConfiguration()).addClassLoaders(classLoader);
+            return reflections;
+        }
+        log.info("Scanning {} classpath URL(s) that have no class index", unindexed.size());
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder().addClassLoaders(classLoader).addUrls(unindexed);
+        for (Map.Entry<String, Map<String, Set<String>>> entries : scan(configurationBuilder, classLoader).getStore().entrySet()) {
+            Map<String, Set<String>> merged = store.computeIfAbsent(entries.getKey(), key -> new HashMap<>());
+            for (Map.Entry<String, Set<String>> entry : entries.getValue().entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), key -> new HashSet<>()).addAll(entry.getValue());
+            }
+        }
+        return fromStore(store, classLoader);
+    }
+
+    /**
+     * Stages a copy of the application jar (see {@link JarDeployer}) and
+     * finds the classes in it, using its class index if it has one.
+     *
+     * @return A new {@link Reflections} instance that loads from a new class loader.
+     */
+    private static Reflections newDeployment() {
+        URL jar;
+        try {
+            jar = JarDeployer.stage();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to stage " + Main.configuration.deployUrl, e);
+        }
+        URLClassLoader deployClassLoader = new URLClassLoader(new URL[]{jar}, classLoader);
+        try {
+
+            // Only use an index from the jar itself, not the rest of the classpath:
+            Store store = null;
+            if (Main.configuration.classIndex) {
+                try (URLClassLoader jarOnly = new URLClassLoader(new URL[]{jar}, null)) {
+                    store = loadIndex(jarOnly, new HashSet<>());
+                } catch (IOException e) {
+                    log.info("Error closing {}", jar, e);
+                }
+            }
+
+            if (store != null) {
+                return fromStore(store, deployClassLoader);
+            }
+            return scan(new ConfigurationBuilder().addClassLoaders(deployClassLoader).addUrls(jar), deployClassLoader);
+        } catch (RuntimeException e) {
+            discard(deployClassLoader);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes a class loader that won't be used after all, deleting its staged
+     * jar, if it has one.
+     *
+     * @param classLoader A class loader from {@link #getReloadableClassLoader(Reflections)}.
+     */
+    public static void discard(URLClassLoader classLoader) {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            log.info("Error closing class loader {}", classLoader, e);
+        }
+        JarDeployer.unstage(classLoader);
+    }
+
+    /**
+     * Reads every {@value IndexProcessor#INDEX} on the classpath into a
+     * {@link Store}, in the same form a Reflections scan would produce.
+     *
+     * @param classLoader The class loader to look for indexes in.
+     * @param indexed     Receives the jars and directories that have an index,
+     *                    as normalised by {@link #root(String)}.
+     * @return The combined index, or null if there isn't one, or it can't be read.
+     */
+    static Store loadIndex(ClassLoader classLoader, Set<String> indexed) {
+        Store store = new Store();
+        int count = 0;
+        try {
+            Enumeration<URL> indexes = classLoader.getResources(IndexProcessor.INDEX);
+            while (indexes.hasMoreElements()) {
+                URL url = indexes.nextElement();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] fields = StringUtils.split(line, '\t');
+                        if (fields.length == 3) {
+                            store.computeIfAbsent(fields[0], key -> new HashMap<>())
+                                    .computeIfAbsent(fields[1], key -> new HashSet<>())
+                                    .add(fields[2]);
+                        }
+                    }
+                }
+                log.info("Using class index {}", url);
+                indexed.add(root(StringUtils.removeEnd(url.toExternalForm(), IndexProcessor.INDEX)));
+                count++;
+            }
+        } catch (IOException e) {
+            log.info("Unable to read the class index, so scanning the classpath instead", e);
+            return null;
+        }
+        return count > 0 ? store : null;
+    }
+
+    /**
+     * Gives the same form for a jar or directory whether it comes from a
+     * class loader's URLs or from a resource inside it, e.g.
+     * <code>jar:file:/app.jar!/</code> and <code>file:/app.jar</code>.
+     */
+    static String root(String url) {
+        String result = url;
+        if (StringUtils.startsWith(result, "jar:")) {
+            result = StringUtils.removeEnd(StringUtils.removeStart(result, "jar:"), "!/");
+        }
+        return StringUtils.removeEnd(result, "/");
+    }
+
+    /**
+     * Builds a {@link Reflections} instance for a reload by updating the index
+     * from the last scan with just the given class files, rather than scanning
+     * everything again. Falls back to a full scan if there's no index yet, or
+     * if a class file can't be read (e.g. the compiler is part-way through
+     * writing it), because the index may then be part-updated.
+     *
+     * @param changed Class files that have been created, modified or deleted.
+     * @return A new {@link Reflections} instance that loads from a new class loader.
+     */
+    public static Reflections newReflections(Collection<Path> changed) {
+        Store store = null;
+        synchronized (ClassFinder.class) {
+            if (Main.configuration.classesReloadable && index != null) {
+                try {
+                    Path classes = classesPath();
+                    for (Path path : changed) {
+                        if (isClassFile(path)) {
+                            update(classes, path);
+                        }
+                    }
+                    store = copy(index);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Unable to update the class index, so scanning all classes instead", e);
+                    index = null;
+                }
+            }
+        }
+        if (store == null) {
+            return newReflections();
+        }
+
+        ClassLoader reloadableClassLoader = new URLClassLoader(new URL[]{Main.configuration.classesUrl}, classLoader);
+
+        // A changed class may have brought in a new supertype from outside the classes directory:
+        Reflections reflections = fromStore(store, reloadableClassLoader);
+        log.info("Updated the class index for {} changed file(s)", changed.size());
+        return reflections;
+    }
+
+    /**
+     * @param reflections An instance from {@link #newReflections()}.
+     * @return The class loader created for the reloadable classes, so it can be
+     * closed when they're no longer in use, or null if classes aren't reloadable
+     * or deployed from a jar.
+     */
+    public static URLClassLoader getReloadableClassLoader(Reflections reflections) {
+        if (Main.configuration.classesReloadable || Main.configuration.deployUrl != null) {
+            for (ClassLoader loader : reflections.getConfiguration().getClassLoaders()) {
+                if (loader instanceof URLClassLoader && loader != classLoader) {
+                    return (URLClassLoader) loader;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param path A changed file.
+     * @return If the path is a class file, true.
+     */
+    public static boolean isClassFile(Path path) {
+        return StringUtils.endsWith(path.toString(), ".class");
+    }
+
+    /**
+     * Removes what's indexed for the class, then, if the file still exists, scans it again.
+     */
+    private static void update(Path classes, Path path) throws IOException {
+        String className = StringUtils.removeEnd(classes.relativize(path.toAbsolutePath()).toString(), ".class")
+                .replace(path.getFileSystem().getSeparator(), ".");
+        remove(className);
+
+        if (Files.isRegularFile(path)) {
+            ClassFile classFile;
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                classFile = new ClassFile(input);
+            }
+            if (!className.equals(classFile.getName())) {
+                remove(classFile.getName());
+            }
+            for (Scanner scanner : scanners) {
+                for (Map.Entry<String, String> entry : scanner.scan(classFile)) {
+                    index.computeIfAbsent(scanner.index(), key -> new HashMap<>())
+                            .computeIfAbsent(entry.getKey(), key -> new HashSet<>())
+                            .add(entry.getValue());
+                }
+            }
+            log.debug("Re-indexed {}", classFile.getName());
+        } else {
+            log.debug("Removed {} from the index", className);
+        }
+    }
+
+    private static void remove(String className) {
+        for (Map<String, Set<String>> entries : index.values()) {
+            entries.values().removeIf(values -> values.remove(className) && values.isEmpty());
+        }
+    }
+
+    private static Path classesPath() {
+        try {
+            return Paths.get(Main.configuration.classesUrl.toURI()).toAbsolutePath();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Unable to get a path for " + Main.configuration.classesUrl, e);
+        }
+    }
+
+    private static Store copy(Store store) {
+        Store result = new Store();
+        for (Map.Entry<String, Map<String, Set<String>>> entries : store.entrySet()) {
+            Map<String, Set<String>> copy = new HashMap<>();
+            for (Map.Entry<String, Set<String>> entry : entries.getValue().entrySet()) {
+                copy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+            result.put(entries.getKey(), copy);
+        }
+        return result;
+    }
+
     /**
      * Builds a {@link Reflections} instance that will scan for classes in, and
-     * load them from, the given class loader.
+     * load them from, the given class loader. The scan is done by
+     * {@link ClassScanner} unless {@link com.github.davidcarboni.restolino.Configuration#scanner} is set to
+     * "reflections".
      *
      * @param classLoader The class loader to scan and load from.
      * @return A new {@link Reflections} instance.
@@ -46,12 +345,36 @@ public class ClassFinder {
         } else {
             configurationBuilder.addUrls(ClasspathHelper.forClassLoader(classLoader));
         }
-        Reflections reflections = new Reflections(configurationBuilder);
+        Reflections reflections = scan(configurationBuilder, classLoader);
 
-        log.info("Reflections URLs: {}", reflections.getConfiguration().getUrls());
-        if (Main.configuration.classesReloadable && reflections.getConfiguration().getUrls().size() == 0 && StringUtils.isNotEmpty(Main.configuration.packagePrefix)) {
+        log.info("Reflections URLs: {}", configurationBuilder.getUrls());
+        if (Main.configuration.classesReloadable && configurationBuilder.getUrls().size() == 0 && StringUtils.isNotEmpty(Main.configuration.packagePrefix)) {
             log.info("It looks like no reloadable classes were found. Is '{}' the correct package prefix for your app?", Main.configuration.packagePrefix);
         }
         return reflections;
     }
+
+    /**
+     * Scans the URLs in the given configuration, using {@link ClassScanner}
+     * unless the Reflections scanner has been configured.
+     */
+    private static Reflections scan(ConfigurationBuilder configurationBuilder, ClassLoader classLoader) {
+        if (StringUtils.equalsIgnoreCase(Main.configuration.scanner, "reflections")) {
+            return new Reflections(configurationBuilder);
+        }
+        return fromStore(ClassScanner.scan(configurationBuilder.getUrls()), classLoader);
+    }
+
+    /**
+     * Builds a {@link Reflections} instance from an index, expanding supertypes
+     * from outside the index in the same way as a Reflections scan.
+     */
+    private static Reflections fromStore(Store store, ClassLoader classLoader) {
+        Reflections reflections = new Reflections(store);
+        ((ConfigurationBuilder) reflections.getConfiguration()).addClassLoaders(classLoader);
+        reflections.expandSuperTypes(
+                store.computeIfAbsent(Scanners.SubTypes.index(), key -> new HashMap<>()),
+                store.computeIfAbsent(Scanners.TypesAnnotated.index(), key -> new HashMap<>()));
+        return reflections;
+    }
 }
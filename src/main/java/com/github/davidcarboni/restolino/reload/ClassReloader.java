@@ -1,24 +1,32 @@
 package com.github.davidcarboni.restolino.reload;
 
 import com.github.davidcarboni.restolino.Main;
-import com.github.davidcarboni.restolino.jetty.ApiHandler;
 import org.reflections.Reflections;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.WatchService;
+import java.nio.file.WatchEvent;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class ClassReloader implements Runnable {
 
     private static final Logger log = getLogger(ClassReloader.class);
     static ClassReloader classMonitor;
-    static WatchService watcher;
+    static Watcher watcher;
     String path;
     volatile boolean reloadRequested;
+    // Guarded by this:
+    Set<Path> changes = new HashSet<>();
+    boolean rescan;
 
     /**
      * Sets up and starts a monitor for the given path.
@@ -50,24 +58,43 @@ public class ClassReloader implements Runnable {
 
             // Set up
             Path path = FileSystems.getDefault().getPath(this.path);
-            watcher = FileSystems.getDefault().newWatchService();
-            Scanner.start(path, watcher);
+            watcher = Watcher.start(path, Main.configuration.reloadQuietMillis, Watcher::isNotTemporary, ClassReloader::requestReload);
 
             while (true) {
 
                 // Reload when notified
                 synchronized (this) {
-                    this.wait();
+                    while (!reloadRequested) {
+                        this.wait();
+                    }
                 }
 
                 // Keep reloading until all changes have notified:
                 while (reloadRequested) {
-                    reloadRequested = false;
-                    Reflections reflections = ClassFinder.newReflections();
-                    ApiHandler.setupApi(reflections);
-                    Main.mainHandler.setupPreFilters(reflections);
-                    Main.mainHandler.setupPostFilters(reflections);
-                    Main.mainHandler.runStartups(reflections);
+                    Set<Path> changed;
+                    boolean full;
+                    synchronized (this) {
+                        reloadRequested = false;
+                        changed = changes;
+                        changes = new HashSet<>();
+                        full = rescan || changed.stream().anyMatch(Files::isDirectory);
+                        rescan = false;
+                    }
+
+                    if (!full && changed.stream().noneMatch(ClassFinder::isClassFile)) {
+                        log.info("No class files changed, so not reloading.");
+                        continue;
+                    }
+                    try {
+                        Reflections reflections = full ? ClassFinder.newReflections() : ClassFinder.newReflections(changed);
+                        Main.mainHandler.reload(reflections);
+                    } catch (RuntimeException e) {
+                        // Keep watching. These changes are lost, so the next reload scans everything:
+                        log.error("Error reloading classes. Will rescan on the next change.", e);
+                        synchronized (this) {
+                            rescan = true;
+                        }
+                    }
                 }
 
             }
@@ -87,27 +114,56 @@ public class ClassReloader implements Runnable {
      * Requests a reload. This method can be called multiple times by multiple
      * threads and reloads will be triggered asynchronously until
      * {@link #reloadRequested} is no longer set to true.
+     * <p>
+     * This rescans all classes.
      */
     public static void requestReload() {
         synchronized (classMonitor) {
             // Set the reload flag and notify:
+            classMonitor.rescan = true;
             classMonitor.reloadRequested = true;
             classMonitor.notify();
         }
     }
 
     /**
-     * Closes the {@link WatchService}.
+     * Requests a single reload for a batch of changes from the {@link Watcher}.
+     * Deletions are recorded so they're dropped from the class index, but
+     * don't trigger a reload on their own. An overflow means a full rescan.
      *
-     * @throws IOException If an error occurs on {@link WatchService#close()}.
+     * @param changes The changed files and the kind of change to each.
      */
-    public static void shutdown() throws IOException {
-        if (watcher != null) {
-            synchronized (watcher) {
-                log.info("Closing filesystem monitor.");
-                watcher.close();
-                watcher = null;
+    static void requestReload(Map<Path, WatchEvent.Kind<?>> changes) {
+        synchronized (classMonitor) {
+            for (Map.Entry<Path, WatchEvent.Kind<?>> change : changes.entrySet()) {
+                if (change.getValue() == OVERFLOW) {
+                    log.info("Reload triggered by {} on {}", OVERFLOW, change.getKey());
+                    classMonitor.rescan = true;
+                    classMonitor.reloadRequested = true;
+                } else {
+                    classMonitor.changes.add(change.getKey());
+                    classMonitor.reloadRequested |= change.getValue() != ENTRY_DELETE;
+                }
             }
+            if (classMonitor.reloadRequested) {
+                log.info("Reload triggered by {} change(s)", changes.size());
+                classMonitor.notify();
+            } else {
+                log.info("Not triggering reload for deletion of {}", changes.keySet());
+            }
+        }
+    }
+
+    /**
+     * Stops the {@link Watcher}.
+     *
+     * @throws IOException If an error occurs on {@link java.nio.file.WatchService#close()}.
+     */
+    public static synchronized void shutdown() throws IOException {
+        if (watcher != null) {
+            log.info("Closing filesystem monitor.");
+            watcher.close();
+            watcher = null;
         }
     }
 
@@ -0,0 +1,284 @@
+package com.github.davidcarboni.restolino.reload;
+
+import org.reflections.Store;
+import org.reflections.scanners.Scanners;
+import org.reflections.vfs.SystemDir;
+import org.reflections.vfs.Vfs;
+import org.reflections.vfs.ZipDir;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A classpath scanner that only reads what Restolino needs: each class's
+ * superclass, interfaces and class-level annotations. It reads these straight
+ * from the constant pool, skipping fields, methods and code, and doesn't load
+ * any classes or build a javassist model.
+ * <p>
+ * Jars and directories are read in parallel. The result is a {@link Store}
+ * with the same <code>SubTypes</code> and <code>TypesAnnotated</code> entries
+ * a default Reflections scan of the same URLs would produce, so it can be
+ * passed to <code>new Reflections(store)</code> and queried in the usual way.
+ */
+class ClassScanner {
+
+    private static final Logger log = getLogger(ClassScanner.class);
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final String OBJECT = Object.class.getName();
+    private static final String VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations";
+
+    /**
+     * The parts of a class file we're interested in.
+     */
+    static class ClassInfo {
+        String name;
+        String superclass;
+        List<String> interfaces = new ArrayList<>();
+        List<String> annotations = new ArrayList<>();
+    }
+
+    /**
+     * Scans the class files under the given URLs.
+     *
+     * @param urls Directories and jars, as passed to Reflections.
+     * @return The index of supertypes and annotations.
+     */
+    static Store scan(Collection<URL> urls) {
+        long start = System.nanoTime();
+        List<ClassInfo> classes = urls.parallelStream()
+                .flatMap(url -> scan(url).stream())
+                .collect(Collectors.toList());
+
+        Store store = new Store();
+        store.put(Scanners.SubTypes.index(), new HashMap<>());
+        store.put(Scanners.TypesAnnotated.index(), new HashMap<>());
+        for (ClassInfo info : classes) {
+            add(info, store);
+        }
+        log.info("Scanned {} classes in {} URL(s) in {}ms", classes.size(), urls.size(), (System.nanoTime() - start) / 1000000);
+        return store;
+    }
+
+    /**
+     * Adds the entries for a class to the store, in the same form as the Reflections
+     * {@link Scanners#SubTypes} and {@link Scanners#TypesAnnotated} scanners.
+     *
+     * @param info  A scanned class.
+     * @param store The index to add to.
+     */
+    static void add(ClassInfo info, Store store) {
+        if (info.superclass != null && !OBJECT.equals(info.superclass)) {
+            put(store, Scanners.SubTypes.index(), info.superclass, info.name);
+        }
+        for (String type : info.interfaces) {
+            put(store, Scanners.SubTypes.index(), type, info.name);
+        }
+        for (String annotation : info.annotations) {
+            put(store, Scanners.TypesAnnotated.index(), annotation, info.name);
+        }
+    }
+
+    private static void put(Store store, String index, String key, String value) {
+        store.computeIfAbsent(index, k -> new HashMap<>()).computeIfAbsent(key, k -> new HashSet<>()).add(value);
+    }
+
+    private static List<ClassInfo> scan(URL url) {
+        Vfs.Dir dir = null;
+        try {
+            dir = Vfs.fromURL(url);
+            List<Vfs.File> files = new ArrayList<>();
+            for (Vfs.File file : dir.getFiles()) {
+                if (file.getRelativePath().endsWith(".class")) {
+                    files.add(file);
+                }
+            }
+            // Files in a jar or directory can be opened independently, but
+            // other kinds (e.g. a jar stream) have to be read in order:
+            boolean parallel = dir instanceof ZipDir || dir instanceof SystemDir;
+            return (parallel ? files.parallelStream() : files.stream())
+                    .map(ClassScanner::read)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } catch (RuntimeException e) {
+            log.warn("Unable to scan {}, ignoring it and continuing", url, e);
+            return new ArrayList<>();
+        } finally {
+            if (dir != null) {
+                dir.close();
+            }
+        }
+    }
+
+    private static ClassInfo read(Vfs.File file) {
+        try (InputStream input = file.openInputStream()) {
+            return read(input);
+        } catch (IOException | RuntimeException e) {
+            log.trace("Unable to scan {}", file.getRelativePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the class name, supertypes and class-level annotations from a class file.
+     *
+     * @param input The class file.
+     * @return What was read.
+     * @throws IOException If the class file can't be read or isn't valid.
+     */
+    static ClassInfo read(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(input));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        data.readUnsignedShort(); // minor version
+        data.readUnsignedShort(); // major version
+
+        // We only keep UTF8 entries and class references (which point to a UTF8 entry):
+        int count = data.readUnsignedShort();
+        String[] strings = new String[count];
+        int[] classes = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    strings[i] = data.readUTF();
+                    break;
+                case 7: // Class
+                    classes[i] = data.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    data.skipBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    data.skipBytes(3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    data.skipBytes(4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    data.skipBytes(8);
+                    i++; // These take two slots
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        ClassInfo info = new ClassInfo();
+        data.readUnsignedShort(); // access flags
+        info.name = className(data.readUnsignedShort(), strings, classes);
+        info.superclass = className(data.readUnsignedShort(), strings, classes);
+        int interfaces = data.readUnsignedShort();
+        for (int i = 0; i < interfaces; i++) {
+            info.interfaces.add(className(data.readUnsignedShort(), strings, classes));
+        }
+
+        skipMembers(data); // fields
+        skipMembers(data); // methods
+
+        int attributes = data.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            String name = strings[data.readUnsignedShort()];
+            int length = data.readInt();
+            if (VISIBLE_ANNOTATIONS.equals(name) || INVISIBLE_ANNOTATIONS.equals(name)) {
+                int annotations = data.readUnsignedShort();
+                for (int a = 0; a < annotations; a++) {
+                    info.annotations.add(annotation(data, strings));
+                }
+            } else {
+                skip(data, length);
+            }
+        }
+        return info;
+    }
+
+    private static String className(int index, String[] strings, int[] classes) {
+        if (index == 0) {
+            return null;
+        }
+        return strings[classes[index]].replace('/', '.');
+    }
+
+    private static void skipMembers(DataInputStream data) throws IOException {
+        int members = data.readUnsignedShort();
+        for (int i = 0; i < members; i++) {
+            data.skipBytes(6); // access flags, name and descriptor
+            int attributes = data.readUnsignedShort();
+            for (int a = 0; a < attributes; a++) {
+                data.skipBytes(2);
+                skip(data, data.readInt());
+            }
+        }
+    }
+
+    /**
+     * Reads an annotation, returning its type name and skipping its values.
+     */
+    private static String annotation(DataInputStream data, String[] strings) throws IOException {
+        String descriptor = strings[data.readUnsignedShort()];
+        int pairs = data.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            data.skipBytes(2); // name
+            skipElementValue(data, strings);
+        }
+        // A descriptor looks like Lcom/example/Type;
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    private static void skipElementValue(DataInputStream data, String[] strings) throws IOException {
+        int tag = data.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                data.skipBytes(4);
+                break;
+            case '@':
+                annotation(data, strings);
+                break;
+            case '[':
+                int values = data.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    skipElementValue(data, strings);
+                }
+                break;
+            default: // A constant or class
+                data.skipBytes(2);
+        }
+    }
+
+    private static void skip(DataInputStream data, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = data.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of class file");
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.davidcarboni.restolino.reload;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.Map;
+
+/**
+ * Receives the changes picked up by a {@link Watcher}.
+ */
+public interface FileListener {
+
+    /**
+     * Called once for each batch of changes.
+     *
+     * @param changes The files that changed, in the order they were first seen, with the
+     *                latest kind of event for each. For {@link java.nio.file.StandardWatchEventKinds#OVERFLOW},
+     *                events have been lost, so the path is a directory in which anything may have changed.
+     */
+    void changed(Map<Path, WatchEvent.Kind<?>> changes);
+}
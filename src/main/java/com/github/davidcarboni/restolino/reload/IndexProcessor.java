@@ -0,0 +1,195 @@
+package com.github.davidcarboni.restolino.reload;
+
+import com.github.davidcarboni.restolino.framework.Api;
+import com.github.davidcarboni.restolino.framework.Home;
+import com.github.davidcarboni.restolino.framework.NotFound;
+import com.github.davidcarboni.restolino.framework.PostFilter;
+import com.github.davidcarboni.restolino.framework.PreFilter;
+import com.github.davidcarboni.restolino.framework.ServerError;
+import com.github.davidcarboni.restolino.framework.Startup;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes an index of the classes Restolino looks for at startup ({@link Api}
+ * endpoints and implementations of {@link Home}, {@link NotFound},
+ * {@link ServerError}, {@link Startup}, {@link PreFilter} and
+ * {@link PostFilter}) to {@value #INDEX} at compile time.
+ * <p>
+ * If the index is on the classpath, {@link ClassFinder} uses it instead of
+ * scanning the jar or directory it's in, which makes startup faster. Jars and
+ * directories without an index are still scanned. This processor is picked up
+ * automatically by <code>javac</code> when Restolino is on the compile
+ * classpath. Set <code>restolino.classindex=false</code> to ignore the index
+ * and scan instead.
+ * <p>
+ * Each line of the index is <code>SubTypes</code> or
+ * <code>TypesAnnotated</code>, then the framework type, then the class, separated by tabs.
+ * <p>
+ * An incremental build only compiles the sources that changed, so the index
+ * from the last build is merged in. Classes from it are checked again, and
+ * dropped if they no longer exist, or are no longer endpoints or framework types.
+ */
+@SupportedAnnotationTypes("*")
+public class IndexProcessor extends AbstractProcessor {
+
+    /**
+     * The location of the index on the classpath.
+     */
+    public static final String INDEX = "META-INF/restolino/index";
+
+    static final String SUB_TYPES = "SubTypes";
+    static final String TYPES_ANNOTATED = "TypesAnnotated";
+
+    private static final List<String> frameworkTypes = Arrays.asList(
+            Home.class.getName(),
+            NotFound.class.getName(),
+            ServerError.class.getName(),
+            Startup.class.getName(),
+            PreFilter.class.getName(),
+            PostFilter.class.getName());
+
+    // Sorted so the output is repeatable:
+    private final Set<String> lines = new TreeSet<>();
+    // The classes compiled in this build:
+    private final Set<String> indexed = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            boolean existing = merge();
+            if (existing || !lines.isEmpty()) {
+                write();
+            }
+        } else {
+            for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+                index(type);
+            }
+        }
+        // Don't claim the annotations - other processors may want them:
+        return false;
+    }
+
+    private void index(TypeElement type) {
+        String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+        if (!indexed.add(name)) {
+            return;
+        }
+        if (type.getAnnotation(Api.class) != null) {
+            lines.add(TYPES_ANNOTATED + "\t" + Api.class.getName() + "\t" + name);
+        }
+        Set<String> supertypes = new TreeSet<>();
+        supertypes(type.asType(), supertypes);
+        for (String supertype : supertypes) {
+            if (frameworkTypes.contains(supertype)) {
+                lines.add(SUB_TYPES + "\t" + supertype + "\t" + name);
+            }
+        }
+
+        // Nested classes (e.g. a static Startup inside another class):
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            index(nested);
+        }
+    }
+
+    private void supertypes(TypeMirror type, Set<String> result) {
+        for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+            if (supertype.getKind() == TypeKind.DECLARED) {
+                Element element = ((DeclaredType) supertype).asElement();
+                String name = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+                if (result.add(name)) {
+                    supertypes(supertype, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds classes from the index written by the last build, if there is one,
+     * that weren't compiled this time. Each is indexed again from its class
+     * file, so it's dropped if it's been deleted or no longer qualifies.
+     *
+     * @return If there was an index to merge.
+     */
+    private boolean merge() {
+        Set<String> previous = new TreeSet<>();
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length == 3) {
+                        previous.add(fields[2]);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // No index from a previous build
+            return false;
+        }
+        for (String name : previous) {
+            if (!indexed.contains(name)) {
+                TypeElement type = resolve(name);
+                if (type != null) {
+                    index(type);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param binaryName A class name, with a <code>$</code> before the names of nested classes.
+     * @return The class, or null if it no longer exists.
+     */
+    private TypeElement resolve(String binaryName) {
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.'));
+        if (type != null && processingEnv.getElementUtils().getBinaryName(type).contentEquals(binaryName)) {
+            return type;
+        }
+        return null;
+    }
+
+    private void write() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8))) {
+                for (String line : lines) {
+                    writer.print(line);
+                    writer.print('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unable to write the Restolino class index: " + e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.davidcarboni.restolino.reload;
+
+import com.github.davidcarboni.restolino.Main;
+import org.reflections.Reflections;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Deploys new versions of your application jar without a restart.
+ * <p>
+ * Each version is copied to a staging file, so the jar can be replaced while
+ * the running version is still loading classes from its copy, and loaded in a
+ * class loader of its own. When the jar changes, the new version's startups
+ * and warm-up requests run while the current version keeps serving. It's then
+ * swapped in, and the old version is closed once its in-flight requests have
+ * finished. If the new version fails to start, the current one carries on.
+ * <p>
+ * Replace the jar with a move, rather than copying over it, so a half-written
+ * jar is never picked up.
+ */
+public class JarDeployer {
+
+    private static final Logger log = getLogger(JarDeployer.class);
+
+    static Watcher watcher;
+
+    // Staging copies that are still in use. Each is deleted when its deployment
+    // is retired (see unstage) and any that are left are deleted on exit:
+    private static final Set<Path> staged = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(JarDeployer::deleteStaged, "Delete staged jars"));
+    }
+
+    /**
+     * Starts watching the application jar for changes.
+     *
+     * @throws IOException If the jar's directory can't be watched.
+     */
+    public static synchronized void start() throws IOException {
+        Path jar = jarPath();
+        // Only the jar's own directory, not everything under it:
+        watcher = Watcher.start(jar.getParent(), false, Main.configuration.reloadQuietMillis, jar::equals, JarDeployer::changed);
+    }
+
+    /**
+     * Stops watching for changes.
+     *
+     * @throws IOException If an error occurs on {@link java.nio.file.WatchService#close()}.
+     */
+    public static synchronized void shutdown() throws IOException {
+        if (watcher != null) {
+            log.info("Closing deployment monitor.");
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Called by the {@link Watcher} when the jar changes. Deploys run one at a
+     * time on the watching thread, so changes that arrive while a deploy is in
+     * progress are picked up once it's finished.
+     */
+    static void changed(Map<Path, WatchEvent.Kind<?>> changes) {
+        if (!changes.values().stream().allMatch(kind -> kind == ENTRY_DELETE)) {
+            deploy();
+        }
+    }
+
+    /**
+     * Loads the application jar and swaps it in for the current version.
+     */
+    public static void deploy() {
+        log.info("Deploying {}", Main.configuration.deployUrl);
+        long start = System.nanoTime();
+        Reflections reflections;
+        try {
+            reflections = ClassFinder.newReflections();
+        } catch (RuntimeException e) {
+            log.error("Error loading {}. Keeping the current version.", Main.configuration.deployUrl, e);
+            return;
+        }
+        if (Main.mainHandler.deploy(reflections)) {
+            log.info("Deployed {} in {}ms", Main.configuration.deployUrl, (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    /**
+     * Copies the application jar to a staging file for a new class loader to load from.
+     *
+     * @return The URL of the copy.
+     * @throws IOException If the jar can't be copied.
+     */
+    static URL stage() throws IOException {
+        Path copy = Files.createTempFile("restolino-", ".jar");
+        try {
+            Files.copy(jarPath(), copy, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(copy);
+            throw e;
+        }
+        staged.add(copy);
+        log.debug("Staged {} as {}", Main.configuration.deployUrl, copy);
+        return copy.toUri().toURL();
+    }
+
+    /**
+     * Deletes the staging copy, if any, that a closed class loader was loading from.
+     *
+     * @param classLoader A closed class loader.
+     */
+    public static void unstage(URLClassLoader classLoader) {
+        for (URL url : classLoader.getURLs()) {
+            try {
+                Path path = Paths.get(url.toURI());
+                if (staged.remove(path)) {
+                    Files.deleteIfExists(path);
+                    log.debug("Deleted {}", path);
+                }
+            } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+                log.info("Error deleting staged jar {}", url, e);
+            }
+        }
+    }
+
+    private static void deleteStaged() {
+        for (Path path : staged) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.info("Error deleting staged jar {}", path, e);
+            }
+        }
+        staged.clear();
+    }
+
+    private static Path jarPath() {
+        try {
+            return Paths.get(Main.configuration.deployUrl.toURI()).toAbsolutePath();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Unable to get a path for " + Main.configuration.deployUrl, e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.github.davidcarboni.restolino.reload;
+
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Watches a directory, usually including subdirectories, for changes and
+ * passes them to a {@link FileListener} in batches.
+ * <p>
+ * One thread takes every {@link WatchKey} and looks up the directory it was
+ * registered for. New subdirectories are registered as soon as they're
+ * created, and anything already in them is reported as created. Changes are
+ * collected until nothing has changed for the quiet period, so a burst of
+ * changes (e.g. a compile) reaches the listener as a single batch.
+ * <p>
+ * Thanks to the following resources:
+ * <ul>
+ * <li>
+ * <a href=
+ * "http://andreinc.net/2013/12/06/java-7-nio-2-tutorial-writing-a-simple-filefolder-monitor-using-the-watch-service-api/"
+ * >http://andreinc.net/2013/12/06/java-7-nio-2-tutorial-writing-a-simple-
+ * filefolder-monitor-using-the-watch-service-api/</a></li>
+ * <li>
+ * <a href=
+ * "http://docs.oracle.com/javase/tutorial/essential/io/notification.html"
+ * >http://docs.oracle.com/javase/tutorial/essential/io/notification.html</a></li>
+ * </ul>
+ */
+public class Watcher implements Runnable, Closeable {
+
+    private static final Logger log = getLogger(Watcher.class);
+
+    /**
+     * If changes keep coming, a batch is delivered anyway after this many quiet periods.
+     */
+    static final int MAX_QUIET_PERIODS = 10;
+
+    final Path root;
+    final boolean recursive;
+    final long quietMillis;
+    final Predicate<Path> filter;
+    final FileListener listener;
+    final WatchService watchService;
+
+    // Only used by the watching thread once it's started:
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private Map<Path, WatchEvent.Kind<?>> pending = new LinkedHashMap<>();
+    private long firstPending;
+
+    /**
+     * Starts watching on a new thread.
+     *
+     * @param root        The directory to watch, including subdirectories.
+     * @param quietMillis How long to wait for changes to stop before notifying the listener.
+     *                    Zero means each group of events is passed on as soon as it's seen.
+     * @param filter      Which files to report changes for.
+     * @param listener    Notified of each batch of changes.
+     * @return The started {@link Watcher}. Close it to stop watching.
+     * @throws IOException If the {@link WatchService} can't be created or the directories can't be registered.
+     */
+    public static Watcher start(Path root, long quietMillis, Predicate<Path> filter, FileListener listener) throws IOException {
+        return start(root, true, quietMillis, filter, listener);
+    }
+
+    /**
+     * Starts watching on a new thread.
+     *
+     * @param root        The directory to watch.
+     * @param recursive   If true, subdirectories are watched too. Otherwise only files directly in the root are.
+     * @param quietMillis How long to wait for changes to stop before notifying the listener.
+     *                    Zero means each group of events is passed on as soon as it's seen.
+     * @param filter      Which files to report changes for.
+     * @param listener    Notified of each batch of changes.
+     * @return The started {@link Watcher}. Close it to stop watching.
+     * @throws IOException If the {@link WatchService} can't be created or the directories can't be registered.
+     */
+    public static Watcher start(Path root, boolean recursive, long quietMillis, Predicate<Path> filter, FileListener listener) throws IOException {
+        Watcher watcher = new Watcher(root, recursive, quietMillis, filter, listener);
+        if (recursive) {
+            watcher.register(root, false);
+        } else {
+            watcher.directories.put(root.register(watcher.watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), root);
+        }
+
+        log.info("Monitoring changes under {}", root);
+        Thread thread = new Thread(watcher, "Watcher " + root.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        return watcher;
+    }
+
+    Watcher(Path root, boolean recursive, long quietMillis, Predicate<Path> filter, FileListener listener) throws IOException {
+        this.root = root;
+        this.recursive = recursive;
+        this.quietMillis = quietMillis;
+        this.filter = filter;
+        this.listener = listener;
+        watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Loops until closed, taking changes from the {@link WatchService} and delivering them once things go quiet.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+                }
+
+                if (key != null) {
+                    process(key);
+                }
+                if (!pending.isEmpty() && (key == null || quietMillis <= 0 ||
+                        System.nanoTime() - firstPending > TimeUnit.MILLISECONDS.toNanos(quietMillis * MAX_QUIET_PERIODS))) {
+                    deliver();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.info("Stopped monitoring {}", root);
+        } catch (InterruptedException e) {
+            log.info("Interrupted. Stopped monitoring {}", root);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops watching.
+     *
+     * @throws IOException If an error occurs on {@link WatchService#close()}.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void process(WatchKey key) {
+        Path directory = directories.get(key);
+        if (directory == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+
+            // An OVERFLOW event can occur, even though it's not
+            // explicitly registered, if events are lost or discarded:
+            if (kind == OVERFLOW) {
+                log.info("{} on {}", OVERFLOW, directory);
+                add(directory, kind);
+                continue;
+            }
+
+            // The filename is the context of the event:
+            Path path = directory.resolve((Path) event.context());
+            if (kind == ENTRY_CREATE && recursive && Files.isDirectory(path)) {
+                register(path, true);
+            } else if (kind == ENTRY_MODIFY && Files.isDirectory(path)) {
+                // Some platforms report a directory as modified when its contents change
+                log.trace("Ignoring {} on directory {}", kind, path);
+            } else if (filter.test(path)) {
+                log.debug("{} on {}", kind, path);
+                add(path, kind);
+            }
+        }
+
+        if (!key.reset()) {
+            log.info("No longer able to access {}", directory);
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Registers the given directory and its subdirectories.
+     *
+     * @param directory The directory to register.
+     * @param created   If true, the directory is new, so anything already in it is reported as created.
+     */
+    private void register(Path directory, boolean created) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) throws IOException {
+                    log.debug("Registering {}", path);
+                    directories.put(path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                    if (created && filter.test(path)) {
+                        add(path, ENTRY_CREATE);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.info("Error registering {} for monitoring. Reporting an overflow instead.", directory, e);
+            add(directory, OVERFLOW);
+        }
+    }
+
+    private void add(Path path, WatchEvent.Kind<?> kind) {
+        if (pending.isEmpty()) {
+            firstPending = System.nanoTime();
+        }
+        // Created then modified is still created:
+        if (kind != ENTRY_MODIFY || pending.get(path) != ENTRY_CREATE) {
+            pending.put(path, kind);
+        }
+    }
+
+    private void deliver() {
+        Map<Path, WatchEvent.Kind<?>> changes = pending;
+        pending = new LinkedHashMap<>();
+        log.debug("Delivering {} change(s) under {}", changes.size(), root);
+        try {
+            listener.changed(changes);
+        } catch (RuntimeException e) {
+            log.error("Error handling changes under {}", root, e);
+        }
+    }
+
+    /**
+     * A filter that skips hidden files and common editor and temp files, which
+     * are written and removed alongside the files we're interested in.
+     *
+     * @param path A changed file.
+     * @return If the file isn't hidden or temporary, true.
+     */
+    public static boolean isNotTemporary(Path path) {
+        String name = path.getFileName().toString();
+        return !(name.startsWith(".") || name.endsWith("~") || name.endsWith(".tmp") || name.endsWith(".swp"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.davidcarboni.restolino.jetty;
+
+import com.github.davidcarboni.restolino.Configuration;
+import com.github.davidcarboni.restolino.Main;
+import org.junit.Before;
+import org.junit.Test;
+import org.reflections.Reflections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link Deployment}.
+ */
+public class DeploymentTest {
+
+    private Deployment deployment;
+
+    @Before
+    public void setUp() {
+        if (Main.configuration == null) {
+            Main.configuration = new Configuration();
+        }
+        deployment = new Deployment(mock(Reflections.class));
+    }
+
+    @Test
+    public void shouldCloseWhenRetiredAndDrained() {
+
+        // Given
+        // A request in flight
+        assertTrue(deployment.acquire());
+
+        // When
+        deployment.retire();
+
+        // Then
+        // It's closed when the request finishes
+        assertFalse(deployment.isClosed());
+        deployment.release();
+        assertTrue(deployment.isClosed());
+        assertEquals(0, deployment.getInFlight());
+    }
+
+    @Test
+    public void shouldNotBeAcquiredOnceRetired() {
+
+        // Given
+        deployment.retire();
+
+        // When
+        boolean acquired = deployment.acquire();
+
+        // Then
+        assertFalse(acquired);
+        assertTrue(deployment.isClosed());
+        assertEquals(0, deployment.getInFlight());
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.davidcarboni.restolino.jetty;
+
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link HealthHandler}.
+ */
+public class HealthHandlerTest {
+
+    private Server server;
+    private LocalConnector connector;
+    private HealthHandler healthHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server();
+        connector = new LocalConnector(server);
+        server.addConnector(connector);
+        healthHandler = new HealthHandler();
+        healthHandler.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) {
+                response.setStatus(HttpServletResponse.SC_OK);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.setHandler(healthHandler);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void shouldReportReadyOnlyBetweenStartupAndDrain() throws Exception {
+
+        // Given
+        // Still starting up
+        String starting = get(HealthHandler.READY);
+
+        // When
+        healthHandler.ready();
+        String ready = get(HealthHandler.READY);
+        healthHandler.drain();
+        String draining = get(HealthHandler.READY);
+
+        // Then
+        assertTrue(starting.startsWith("HTTP/1.1 503"));
+        assertTrue(ready.startsWith("HTTP/1.1 200"));
+        assertTrue(draining.startsWith("HTTP/1.1 503"));
+        assertTrue(get(HealthHandler.LIVE).startsWith("HTTP/1.1 200"));
+    }
+
+    @Test
+    public void shouldCloseConnectionsWhileDraining() throws Exception {
+
+        // Given
+        healthHandler.ready();
+        String before = get("/api");
+
+        // When
+        healthHandler.drain();
+        String after = get("/api");
+
+        // Then
+        // Requests are still served, but connections aren't kept alive
+        assertFalse(before.contains("Connection: close"));
+        assertTrue(after.startsWith("HTTP/1.1 200"));
+        assertTrue(after.contains("Connection: close"));
+    }
+
+    private String get(String path) throws Exception {
+        return connector.getResponse("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+    }
+}
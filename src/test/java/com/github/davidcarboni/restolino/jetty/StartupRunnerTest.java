@@ -0,0 +1,174 @@
+package com.github.davidcarboni.restolino.jetty;
+
+import com.github.davidcarboni.restolino.framework.DependsOn;
+import com.github.davidcarboni.restolino.framework.Priority;
+import com.github.davidcarboni.restolino.framework.Startup;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link StartupRunner}.
+ */
+public class StartupRunnerTest {
+
+    static List<String> log = new CopyOnWriteArrayList<>();
+    static CountDownLatch both;
+
+    @Before
+    public void setUp() {
+        log.clear();
+        both = new CountDownLatch(2);
+    }
+
+    @Test
+    public void shouldRunSamePriorityInParallel() {
+
+        // Given
+        // Two startups that each wait for the other to be running
+        List<Startup> startups = Arrays.asList(new First(), new ParallelA(), new ParallelB(), new Last());
+
+        // When
+        new StartupRunner(startups).run(2);
+
+        // Then
+        assertEquals("first", log.get(0));
+        assertEquals("last", log.get(3));
+        assertTrue(log.containsAll(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void shouldWaitForDependency() {
+
+        // Given
+        List<Startup> startups = Arrays.asList(new Dependent(), new Dependency());
+
+        // When
+        new StartupRunner(startups).run(2);
+
+        // Then
+        assertEquals(Arrays.asList("dependency", "dependent"), log);
+    }
+
+    @Test
+    public void shouldFailFast() {
+
+        // Given
+        List<Startup> startups = Arrays.asList(new Failing(), new Last());
+
+        // When
+        try {
+            new StartupRunner(startups).run(2);
+            fail("Expected the failure to be thrown");
+        } catch (IllegalStateException e) {
+
+            // Then
+            assertEquals("failed", e.getMessage());
+            assertFalse(log.contains("last"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectCycle() {
+        new StartupRunner(Arrays.asList(new CycleA(), new CycleB()));
+    }
+
+    @Priority(1)
+    public static class First implements Startup {
+        @Override
+        public void init() {
+            log.add("first");
+        }
+    }
+
+    @Priority(2)
+    public static class ParallelA implements Startup {
+        @Override
+        public void init() {
+            await();
+            log.add("a");
+        }
+    }
+
+    @Priority(2)
+    public static class ParallelB implements Startup {
+        @Override
+        public void init() {
+            await();
+            log.add("b");
+        }
+    }
+
+    @Priority(3)
+    public static class Last implements Startup {
+        @Override
+        public void init() {
+            log.add("last");
+        }
+    }
+
+    @Priority(1)
+    @DependsOn(Dependency.class)
+    public static class Dependent implements Startup {
+        @Override
+        public void init() {
+            log.add("dependent");
+        }
+    }
+
+    @Priority(1)
+    public static class Dependency implements Startup {
+        @Override
+        public void init() {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.add("dependency");
+        }
+    }
+
+    @Priority(1)
+    public static class Failing implements Startup {
+        @Override
+        public void init() {
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    @DependsOn(CycleB.class)
+    public static class CycleA implements Startup {
+        @Override
+        public void init() {
+        }
+    }
+
+    @DependsOn(CycleA.class)
+    public static class CycleB implements Startup {
+        @Override
+        public void init() {
+        }
+    }
+
+    static void await() {
+        both.countDown();
+        try {
+            if (!both.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Startups with the same priority didn't run in parallel");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
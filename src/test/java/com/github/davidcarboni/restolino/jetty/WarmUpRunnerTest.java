@@ -0,0 +1,90 @@
+package com.github.davidcarboni.restolino.jetty;
+
+import com.github.davidcarboni.restolino.Configuration;
+import com.github.davidcarboni.restolino.api.Router;
+import com.github.davidcarboni.restolino.framework.Api;
+import com.github.davidcarboni.restolino.framework.WarmUp;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reflections.Reflections;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.GET;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link WarmUpRunner}.
+ */
+public class WarmUpRunnerTest {
+
+    private Server server;
+    private LocalConnector connector;
+    private Router router;
+
+    @Before
+    public void setUp() throws Exception {
+        Reflections reflections = mock(Reflections.class);
+        when(reflections.getTypesAnnotatedWith(Api.class)).thenReturn(Collections.singleton(Warm.class));
+        router = new Router(reflections);
+
+        server = new Server();
+        connector = new LocalConnector(server);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) {
+                ApiHandler.handle(router, request, response);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        Warm.count.set(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void shouldSendWarmUpRequestsThroughRouter() throws Exception {
+
+        // Given
+        Configuration configuration = new Configuration();
+        configuration.warmUpIterations = 5;
+        WarmUpRunner warmUp = new WarmUpRunner(router, configuration);
+
+        // When
+        warmUp.run(connector);
+
+        // Then
+        assertTrue(warmUp.hasRequests());
+        assertEquals(1, warmUp.size());
+        assertEquals(5, Warm.count.get());
+    }
+
+    @Api
+    public static class Warm {
+
+        static AtomicInteger count = new AtomicInteger();
+
+        @GET
+        @WarmUp
+        public String get(HttpServletRequest request, HttpServletResponse response) {
+            count.incrementAndGet();
+            return "warm";
+        }
+    }
+}
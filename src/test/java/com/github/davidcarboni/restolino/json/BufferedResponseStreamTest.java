@@ -0,0 +1,151 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link BufferedResponseStream}.
+ */
+public class BufferedResponseStreamTest {
+
+    private HttpServletResponse response;
+    private CapturingOutputStream output;
+
+    @Before
+    public void setUp() throws IOException {
+        response = mock(HttpServletResponse.class);
+        output = new CapturingOutputStream();
+        when(response.getOutputStream()).thenReturn(output);
+    }
+
+    @Test
+    public void shouldSetContentLengthAndWriteOnce() throws IOException {
+
+        // Given
+        byte[] content = "{\"sam\":\"I am\"}".getBytes(StandardCharsets.UTF_8);
+        BufferedResponseStream stream = new BufferedResponseStream(response, BufferPools.fallback, 1024);
+
+        // When
+        for (byte b : content) {
+            stream.write(b);
+            stream.flush();
+        }
+        stream.close();
+
+        // Then
+        verify(response).setContentLengthLong(content.length);
+        assertFalse(stream.isStreaming());
+        assertEquals(1, output.writes);
+        assertTrue(output.closed);
+        assertArrayEquals(content, output.toByteArray());
+    }
+
+    @Test
+    public void shouldGrowTheBuffer() throws IOException {
+
+        // Given
+        byte[] content = new byte[BufferedResponseStream.initialSize * 5 + 3];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        BufferedResponseStream stream = new BufferedResponseStream(response, BufferPools.fallback, content.length);
+
+        // When
+        stream.write(content, 0, 10);
+        stream.write(content, 10, content.length - 10);
+        stream.close();
+
+        // Then
+        verify(response).setContentLengthLong(content.length);
+        assertArrayEquals(content, output.toByteArray());
+    }
+
+    @Test
+    public void shouldStreamOverThreshold() throws IOException {
+
+        // Given
+        byte[] content = new byte[100];
+        BufferedResponseStream stream = new BufferedResponseStream(response, BufferPools.fallback, 64);
+
+        // When
+        stream.write(content, 0, 50);
+        stream.write(content, 50, 50);
+        stream.close();
+
+        // Then
+        verify(response, never()).setContentLengthLong(anyLong());
+        assertTrue(stream.isStreaming());
+        assertTrue(output.closed);
+        assertEquals(content.length, output.toByteArray().length);
+    }
+
+    @Test
+    public void shouldSerialiseWithContentLength() throws IOException {
+
+        // Given
+        SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+        samIAm.id = 7;
+
+        // When
+        Serialiser.serialise(response, samIAm);
+
+        // Then
+        byte[] json = Serialiser.serialise(samIAm).getBytes(StandardCharsets.UTF_8);
+        verify(response).setContentLengthLong(json.length);
+        assertArrayEquals(json, output.toByteArray());
+    }
+
+    static class CapturingOutputStream extends ServletOutputStream {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int writes;
+        boolean closed;
+
+        @Override
+        public void write(int b) {
+            writes++;
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+            bytes.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the bulk operations in {@link Serialiser}.
+ */
+public class BulkTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Serialiser.atomicWrites = false;
+        Serialiser.forceWrites = false;
+    }
+
+    @Test
+    public void shouldWriteAndReadManyFiles() throws IOException {
+
+        // Given
+        // Files spread across a couple of directories
+        Path root = temporaryFolder.newFolder().toPath();
+        Map<Path, SerialiserTest.SamIAm> files = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            Path directory = Files.createDirectories(root.resolve("d" + i % 2));
+            SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+            samIAm.id = i;
+            files.put(directory.resolve(i + ".json"), samIAm);
+        }
+        Serialiser.atomicWrites = true;
+        Serialiser.forceWrites = true;
+
+        // When
+        BulkResult<SerialiserTest.SamIAm> written = Serialiser.serialiseAll(files);
+        BulkResult<SerialiserTest.SamIAm> read = Serialiser.deserialiseAll(files.keySet(), SerialiserTest.SamIAm.class);
+
+        // Then
+        assertTrue(written.isSuccess());
+        assertTrue(read.isSuccess());
+        assertEquals(new ArrayList<>(files.keySet()), new ArrayList<>(read.getValues().keySet()));
+        for (Map.Entry<Path, SerialiserTest.SamIAm> file : files.entrySet()) {
+            assertEquals(file.getValue().id, read.getValues().get(file.getKey()).id);
+        }
+    }
+
+    @Test
+    public void shouldReportFailuresPerFile() throws IOException {
+
+        // Given
+        // One good file and one that doesn't exist
+        Path directory = temporaryFolder.newFolder().toPath();
+        Path good = directory.resolve("good.json");
+        Path missing = directory.resolve("missing.json");
+        Serialiser.serialise(good, new SerialiserTest.SamIAm());
+        List<Path> paths = new ArrayList<>();
+        paths.add(missing);
+        paths.add(good);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // When
+        BulkResult<SerialiserTest.SamIAm> result;
+        try {
+            result = Serialiser.deserialiseAll(paths, SerialiserTest.SamIAm.class, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        // Then
+        assertFalse(result.isSuccess());
+        assertTrue(result.getValues().containsKey(good));
+        assertTrue(result.getFailures().get(missing) instanceof IOException);
+    }
+}
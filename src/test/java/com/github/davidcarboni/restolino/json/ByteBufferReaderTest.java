@@ -0,0 +1,66 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link ByteBufferReader} and the memory-mapped read path in {@link Serialiser}.
+ */
+public class ByteBufferReaderTest {
+
+    private static final String text = "{\"name\":\"Café € 😀\",\"id\":123}";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Serialiser.mapThreshold = 0;
+    }
+
+    @Test
+    public void shouldDecodeUtf8() throws IOException {
+        for (int size : new int[]{1, 2, 3, 7, 1024}) {
+            assertEquals("Buffer size " + size, text, read(size));
+        }
+    }
+
+    @Test
+    public void shouldDeserialiseMappedFile() throws IOException {
+
+        // Given
+        Path path = temporaryFolder.newFile("mapped.json").toPath();
+        SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+        samIAm.id = 1234567890123L;
+        Serialiser.serialise(path, samIAm);
+        Serialiser.mapThreshold = 1;
+
+        // When
+        SerialiserTest.SamIAm result = Serialiser.deserialise(path, SerialiserTest.SamIAm.class);
+
+        // Then
+        assertEquals(samIAm.id, result.id);
+    }
+
+    private static String read(int size) throws IOException {
+        StringBuilder result = new StringBuilder();
+        try (Reader reader = new ByteBufferReader(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)))) {
+            char[] buffer = new char[size];
+            int count;
+            while ((count = reader.read(buffer, 0, size)) != -1) {
+                result.append(buffer, 0, count);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for gzipped Json files in {@link Serialiser}.
+ */
+public class CompressionTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Serialiser.compressWrites = false;
+        Serialiser.atomicWrites = false;
+    }
+
+    @Test
+    public void shouldCompressByExtension() throws IOException {
+
+        // Given
+        Path path = temporaryFolder.getRoot().toPath().resolve("file.json.gz");
+        SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+        samIAm.id = 42;
+
+        // When
+        Serialiser.serialise(path, samIAm);
+
+        // Then
+        assertEquals(Serialiser.serialise(samIAm), gunzip(path));
+        assertEquals(42, Serialiser.deserialise(path, SerialiserTest.SamIAm.class).id);
+    }
+
+    @Test
+    public void shouldCompressByConfigurationAndDetectOnRead() throws IOException {
+
+        // Given
+        Serialiser.compressWrites = true;
+        Serialiser.atomicWrites = true;
+        Path path = temporaryFolder.getRoot().toPath().resolve("array.json");
+        SerialiserTest.SamIAm[] array = new SerialiserTest.SamIAm[3];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = new SerialiserTest.SamIAm();
+            array[i].id = i;
+        }
+
+        // When
+        Serialiser.serialise(path, array);
+        Serialiser.compressWrites = false;
+
+        // Then
+        assertEquals(Serialiser.serialise(array), gunzip(path));
+        assertEquals(3, Serialiser.deserialise(path, SerialiserTest.SamIAm[].class).length);
+        try (Stream<SerialiserTest.SamIAm> stream = Serialiser.stream(path, SerialiserTest.SamIAm.class)) {
+            List<Long> ids = stream.map(samIAm -> samIAm.id).collect(Collectors.toList());
+            assertEquals(Arrays.asList(0L, 1L, 2L), ids);
+        }
+    }
+
+    @Test
+    public void shouldNotCompressByDefault() throws IOException {
+
+        // Given
+        Path path = temporaryFolder.newFile("plain.json").toPath();
+
+        // When
+        Serialiser.serialise(path, new SerialiserTest.SamIAm());
+
+        // Then
+        assertTrue(new String(Files.readAllBytes(path), StandardCharsets.UTF_8).startsWith("{"));
+    }
+
+    private static String gunzip(Path path) throws IOException {
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(path))) {
+            return IOUtils.toString(input, StandardCharsets.UTF_8);
+        }
+    }
+}
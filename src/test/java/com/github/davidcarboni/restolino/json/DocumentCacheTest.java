@@ -0,0 +1,165 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DocumentCache}.
+ */
+public class DocumentCacheTest {
+
+    private Path directory;
+    private DocumentCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache");
+        cache = Serialiser.newCache(1024, false);
+        Serialiser.setCache(cache);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Serialiser.setCache(null);
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void shouldServeUnchangedFileFromCache() throws IOException {
+
+        // Given
+        Path path = write("a.json", 1);
+
+        // When
+        SerialiserTest.SamIAm first = Serialiser.deserialise(path, SerialiserTest.SamIAm.class);
+        SerialiserTest.SamIAm second = Serialiser.deserialise(path, SerialiserTest.SamIAm.class);
+
+        // Then
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 0);
+        assertEquals(Files.size(path), cache.getBytes());
+    }
+
+    @Test
+    public void shouldReloadChangedFile() throws IOException {
+
+        // Given
+        Path path = write("a.json", 1);
+        Serialiser.deserialise(path, SerialiserTest.SamIAm.class);
+
+        // When
+        // The file changes behind our back (same size, different time)
+        Files.write(path, "{\"id\":2}".getBytes());
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 2000));
+        SerialiserTest.SamIAm result = Serialiser.deserialise(path, SerialiserTest.SamIAm.class);
+
+        // Then
+        assertEquals(2, result.id);
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void shouldInvalidateOnWrite() throws IOException {
+
+        // Given
+        Path path = write("a.json", 1);
+        Serialiser.deserialise(path, SerialiserTest.SamIAm.class);
+
+        // When
+        write("a.json", 3);
+
+        // Then
+        assertEquals(0, cache.getSize());
+        assertEquals(3, Serialiser.deserialise(path, SerialiserTest.SamIAm.class).id);
+    }
+
+    @Test
+    public void shouldNotCacheLoadOvertakenByWrite() throws IOException {
+
+        // Given
+        // A write that lands while the file is being read
+        Path path = write("a.json", 1);
+        DocumentCache[] racing = new DocumentCache[1];
+        racing[0] = new DocumentCache(1024, false, new DocumentCache.Loader() {
+            @Override
+            public <O> O load(Path file, Class<O> type) throws IOException {
+                O loaded = Serialiser.getEngine().fromJson(new String(Files.readAllBytes(file)), type);
+                racing[0].invalidate(file);
+                return loaded;
+            }
+        });
+
+        // When
+        racing[0].get(path, SerialiserTest.SamIAm.class);
+
+        // Then
+        // What was read may be out of date, so it isn't kept
+        assertEquals(0, racing[0].getSize());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws IOException {
+
+        // Given
+        // A cache that only has room for two files
+        long size = Files.size(write("x.json", 1));
+        cache = Serialiser.newCache(size * 2, false);
+        Serialiser.setCache(cache);
+        Path a = write("a.json", 1);
+        Path b = write("b.json", 2);
+        Path c = write("c.json", 3);
+
+        // When
+        Serialiser.deserialise(a, SerialiserTest.SamIAm.class);
+        Serialiser.deserialise(b, SerialiserTest.SamIAm.class);
+        Serialiser.deserialise(a, SerialiserTest.SamIAm.class);
+        Serialiser.deserialise(c, SerialiserTest.SamIAm.class);
+
+        // Then
+        // b was least recently used
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+        Serialiser.deserialise(a, SerialiserTest.SamIAm.class);
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void shouldCopyOnRead() throws IOException {
+
+        // Given
+        Serialiser.setCache(Serialiser.newCache(1024, true));
+        Path path = write("a.json", 1);
+
+        // When
+        SerialiserTest.SamIAm first = Serialiser.deserialise(path, SerialiserTest.SamIAm.class);
+        first.id = 99;
+        SerialiserTest.SamIAm second = Serialiser.deserialise(path, SerialiserTest.SamIAm.class);
+
+        // Then
+        assertNotSame(first, second);
+        assertEquals(1, second.id);
+    }
+
+    private Path write(String name, long id) throws IOException {
+        SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+        samIAm.id = id;
+        Path path = directory.resolve(name);
+        Serialiser.serialise(path, samIAm);
+        return path;
+    }
+}
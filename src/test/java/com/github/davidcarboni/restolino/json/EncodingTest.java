@@ -0,0 +1,151 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for content negotiation of alternative encodings in {@link Serialiser}.
+ */
+public class EncodingTest {
+
+    private JsonEngine cbor;
+
+    @Before
+    public void setUp() {
+        cbor = JacksonEngine.forEncoding("cbor");
+        Serialiser.addEncoding(cbor);
+    }
+
+    @After
+    public void tearDown() {
+        Serialiser.removeEncoding(JacksonEngine.CBOR);
+    }
+
+    @Test
+    public void shouldDefaultToJson() {
+        assertSame(Serialiser.getEngine(), Serialiser.responseEngine(accept()));
+        assertSame(Serialiser.getEngine(), Serialiser.responseEngine(accept("text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")));
+        assertSame(Serialiser.getEngine(), Serialiser.responseEngine(accept("application/json, application/cbor;q=0.5")));
+    }
+
+    @Test
+    public void shouldNegotiateBinaryEncoding() {
+        assertSame(cbor, Serialiser.responseEngine(accept("application/cbor")));
+        assertSame(cbor, Serialiser.responseEngine(accept("application/json;q=0.5, application/cbor")));
+    }
+
+    @Test
+    public void shouldReadRequestEncoding() {
+
+        // Given
+        HttpServletRequest json = mock(HttpServletRequest.class);
+        when(json.getContentType()).thenReturn("application/json; charset=UTF-8");
+        HttpServletRequest binary = mock(HttpServletRequest.class);
+        when(binary.getContentType()).thenReturn("application/cbor");
+
+        // Then
+        assertSame(Serialiser.getEngine(), Serialiser.requestEngine(json));
+        assertSame(cbor, Serialiser.requestEngine(binary));
+    }
+
+    @Test
+    public void shouldRoundTripBinary() throws Exception {
+
+        // Given
+        SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+        samIAm.id = 1234567890123L;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // When
+        cbor.toJson(samIAm, output);
+        byte[] bytes = output.toByteArray();
+        SerialiserTest.SamIAm result = cbor.fromJson(bytes, 0, bytes.length, SerialiserTest.SamIAm.class);
+
+        // Then
+        assertEquals(samIAm.id, result.id);
+    }
+
+    @Test
+    public void shouldCreateJsonEngineWithoutDataFormats() throws Exception {
+
+        // Given
+        // A class loader without the optional CBOR and Smile jars
+        ClassLoader withoutDataFormats = new DataFormatHidingClassLoader(getClass().getClassLoader());
+        Class<?> engineClass = withoutDataFormats.loadClass(JacksonEngine.class.getName());
+
+        // When
+        Object engine = engineClass.getConstructor().newInstance();
+
+        // Then
+        assertSame(withoutDataFormats, engineClass.getClassLoader());
+        assertEquals("{\"text\":\"hi\"}", ((JsonEngine) engine).toJson(Collections.singletonMap("text", "hi")));
+        try {
+            engineClass.getMethod("forEncoding", String.class).invoke(null, "cbor");
+            fail("Expected CBOR to be unavailable");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof NoClassDefFoundError);
+        }
+    }
+
+    /**
+     * Loads {@link JacksonEngine} itself, so its references are resolved here,
+     * and hides the Jackson data formats.
+     */
+    static class DataFormatHidingClassLoader extends ClassLoader {
+
+        DataFormatHidingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                if (name.startsWith("com.fasterxml.jackson.dataformat.")) {
+                    throw new ClassNotFoundException(name);
+                }
+                if (!name.startsWith(JacksonEngine.class.getName())) {
+                    return super.loadClass(name, resolve);
+                }
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    try (InputStream input = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        if (input == null) {
+                            throw new ClassNotFoundException(name);
+                        }
+                        byte[] bytes = IOUtils.toByteArray(input);
+                        loaded = defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+
+    private static HttpServletRequest accept(String... values) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeaders("Accept")).thenReturn(Collections.enumeration(Arrays.asList(values)));
+        return request;
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link JsonArraySpliterator} and {@link Serialiser#stream(Path, Class)}.
+ */
+public class JsonArraySpliteratorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldStreamArrayElementsInOrder() throws IOException {
+
+        // Given
+        Path path = write(10);
+
+        // When
+        List<Long> ids;
+        try (Stream<SerialiserTest.SamIAm> stream = Serialiser.stream(path, SerialiserTest.SamIAm.class)) {
+            ids = stream.map(samIAm -> samIAm.id).collect(Collectors.toList());
+        }
+
+        // Then
+        assertEquals(10, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, (long) ids.get(i));
+        }
+    }
+
+    @Test
+    public void shouldStreamInParallel() throws IOException {
+
+        // Given
+        Path path = write(10000);
+
+        // When
+        long sum;
+        List<Long> ordered;
+        try (Stream<SerialiserTest.SamIAm> stream = Serialiser.stream(path, SerialiserTest.SamIAm.class, 100)) {
+            ordered = stream.parallel().map(samIAm -> samIAm.id).collect(Collectors.toList());
+        }
+        sum = ordered.stream().mapToLong(Long::longValue).sum();
+
+        // Then
+        assertEquals(10000, ordered.size());
+        assertEquals(9999L * 10000 / 2, sum);
+        assertEquals(9999, (long) ordered.get(9999));
+    }
+
+    @Test
+    public void shouldStreamEmptyArray() throws IOException {
+
+        // Given
+        Path path = temporaryFolder.newFile("array.json").toPath();
+        Files.write(path, " [ ] ".getBytes(StandardCharsets.UTF_8));
+
+        // When
+        try (Stream<SerialiserTest.SamIAm> stream = Serialiser.stream(path, SerialiserTest.SamIAm.class)) {
+
+            // Then
+            assertEquals(0, stream.parallel().count());
+        }
+    }
+
+    private Path write(int count) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",\n").append("{\"id\":").append(i).append("}");
+        }
+        json.append("]");
+        Path path = temporaryFolder.newFile("array.json").toPath();
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+}
@@ -0,0 +1,273 @@
+package com.github.davidcarboni.restolino.json;
+
+import com.github.davidcarboni.restolino.Configuration;
+import com.github.davidcarboni.restolino.Main;
+import com.github.davidcarboni.restolino.framework.Home;
+import com.github.davidcarboni.restolino.routes.DefaultApiDocumentation;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Conformance tests that every {@link JsonEngine} should pass.
+ */
+@RunWith(Parameterized.class)
+public class JsonEngineTest {
+
+    public enum Colour {RED, GREEN}
+
+    public static class Message {
+        String text;
+        int number;
+        long big;
+        double decimal;
+        boolean flag;
+        Colour colour;
+        List<String> list;
+        Map<String, Integer> map;
+        Message child;
+        transient String ignored;
+    }
+
+    public static class Documentation {
+        Class<?> type;
+        java.lang.reflect.Method method;
+        Home home;
+    }
+
+    public static class Dated {
+        Date date;
+    }
+
+    public static class Timed {
+        Instant instant;
+        LocalDate localDate;
+        OffsetDateTime offsetDateTime;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{
+                {GsonEngine.class.getSimpleName(), new GsonEngine()},
+                {JacksonEngine.class.getSimpleName(), new JacksonEngine()}
+        });
+    }
+
+    @BeforeClass
+    public static void configure() {
+        // The class name type adapters look at the package prefix:
+        if (Main.configuration == null) {
+            Main.configuration = new Configuration();
+        }
+    }
+
+    private final JsonEngine engine;
+
+    public JsonEngineTest(String name, JsonEngine engine) {
+        this.engine = engine;
+    }
+
+    @Test
+    public void shouldRoundTrip() {
+
+        // Given
+        Message message = message();
+
+        // When
+        Message result = engine.fromJson(engine.toJson(message), Message.class);
+
+        // Then
+        assertEquals(message.text, result.text);
+        assertEquals(message.number, result.number);
+        assertEquals(message.big, result.big);
+        assertEquals(message.decimal, result.decimal, 0);
+        assertEquals(message.flag, result.flag);
+        assertEquals(message.colour, result.colour);
+        assertEquals(message.list, result.list);
+        assertEquals(message.map, result.map);
+        assertEquals(message.child.text, result.child.text);
+        assertNull(result.ignored);
+    }
+
+    @Test
+    public void shouldProduceTheSameJsonAsGson() {
+
+        // Given
+        Message message = message();
+
+        // When
+        String json = engine.toJson(message);
+
+        // Then
+        assertEquals(json(new GsonEngine().toJson(message)), json(json));
+    }
+
+    @Test
+    public void shouldOmitNulls() {
+
+        // Given
+        Message message = new Message();
+
+        // When
+        String json = engine.toJson(message);
+
+        // Then
+        assertFalse(json.contains("text"));
+        assertFalse(json.contains("child"));
+    }
+
+    @Test
+    public void shouldIgnoreUnknownProperties() {
+
+        // Given
+        String json = "{\"text\":\"hello\",\"unknown\":{\"nested\":[1,2,3]}}";
+
+        // When
+        Message message = engine.fromJson(json, Message.class);
+
+        // Then
+        assertEquals("hello", message.text);
+    }
+
+    @Test
+    public void shouldReturnNullForEmptyInput() throws IOException {
+        assertNull(engine.fromJson(new StringReader(""), Message.class));
+    }
+
+    @Test
+    public void shouldFormatDates() {
+
+        // Given
+        Dated dated = new Dated();
+        dated.date = new Date();
+        String expected = new SimpleDateFormat(Serialiser.toUTCStringDateFormat, Locale.US).format(dated.date);
+
+        // When
+        String json = engine.toJson(dated);
+        Dated result = engine.fromJson(json, Dated.class);
+
+        // Then
+        assertEquals(expected, json(json).getAsJsonObject().get("date").getAsString());
+        assertEquals(dated.date.getTime() / 1000, result.date.getTime() / 1000);
+    }
+
+    @Test
+    public void shouldFormatJavaTimeAsIso8601() {
+
+        // Given
+        Timed timed = new Timed();
+        timed.instant = Instant.parse("2015-06-01T12:30:00.123Z");
+        timed.localDate = LocalDate.of(2015, 6, 1);
+        timed.offsetDateTime = OffsetDateTime.of(2015, 6, 1, 12, 30, 0, 0, ZoneOffset.ofHours(1));
+
+        // When
+        String json = engine.toJson(timed);
+        Timed result = engine.fromJson(json, Timed.class);
+
+        // Then
+        JsonElement element = json(json);
+        assertEquals("2015-06-01T12:30:00.123Z", element.getAsJsonObject().get("instant").getAsString());
+        assertEquals("2015-06-01", element.getAsJsonObject().get("localDate").getAsString());
+        assertEquals("2015-06-01T12:30:00+01:00", element.getAsJsonObject().get("offsetDateTime").getAsString());
+        assertEquals(timed.instant, result.instant);
+        assertEquals(timed.localDate, result.localDate);
+        assertEquals(timed.offsetDateTime, result.offsetDateTime);
+    }
+
+    @Test
+    public void shouldUseTypeAdapters() throws NoSuchMethodException {
+
+        // Given
+        Documentation documentation = new Documentation();
+        documentation.type = String.class;
+        documentation.method = Object.class.getMethod("toString");
+        documentation.home = new DefaultApiDocumentation();
+
+        // When
+        JsonElement json = json(engine.toJson(documentation));
+
+        // Then
+        assertEquals("String", json.getAsJsonObject().get("type").getAsString());
+        assertEquals("toString", json.getAsJsonObject().get("method").getAsString());
+        assertEquals(DefaultApiDocumentation.class.getName(), json.getAsJsonObject().get("home").getAsString());
+    }
+
+    @Test
+    public void shouldReadAndWriteCharacters() throws IOException {
+
+        // Given
+        Message message = message();
+        StringWriter writer = new StringWriter();
+
+        // When
+        engine.toJson(message, writer);
+        Message result = engine.fromJson(new StringReader(writer.toString()), Message.class);
+
+        // Then
+        assertEquals(message.text, result.text);
+    }
+
+    @Test
+    public void shouldReadAndWriteUtf8Bytes() throws IOException {
+
+        // Given
+        Message message = message();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // When
+        engine.toJson(message, output);
+        Message result = engine.fromJson(new ByteArrayInputStream(output.toByteArray()), Message.class);
+
+        // Then
+        assertEquals(json(engine.toJson(message)), json(new String(output.toByteArray(), StandardCharsets.UTF_8)));
+        assertEquals(message.text, result.text);
+    }
+
+    private static Message message() {
+        Message message = new Message();
+        message.text = "Sam I am é中";
+        message.number = 42;
+        message.big = Long.MAX_VALUE / 3;
+        message.decimal = 1.5;
+        message.flag = true;
+        message.colour = Colour.GREEN;
+        message.list = new ArrayList<>(Arrays.asList("green", "eggs"));
+        message.map = new HashMap<>();
+        message.map.put("ham", 1);
+        message.child = new Message();
+        message.child.text = "child";
+        message.ignored = "transient";
+        return message;
+    }
+
+    private static JsonElement json(String json) {
+        return JsonParser.parseString(json);
+    }
+}
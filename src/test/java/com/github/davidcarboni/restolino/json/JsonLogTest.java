@@ -0,0 +1,138 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link JsonLog}.
+ */
+public class JsonLogTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldAppendConcurrentlyAndReplay() throws Exception {
+
+        // Given
+        Path path = temporaryFolder.newFile("log.ndjson").toPath();
+        List<Future<CompletableFuture<Void>>> appends = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+
+        // When
+        // Lots of threads append at once
+        try (JsonLog log = new JsonLog(path, true, 2)) {
+            for (int i = 0; i < 1000; i++) {
+                SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+                samIAm.id = i;
+                appends.add(pool.submit(() -> log.append(samIAm)));
+            }
+            for (Future<CompletableFuture<Void>> append : appends) {
+                append.get().get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Then
+        // Every record should be in the log, once
+        try (Stream<SerialiserTest.SamIAm> records = JsonLog.read(path, SerialiserTest.SamIAm.class)) {
+            List<Long> ids = records.map(samIAm -> samIAm.id).sorted().collect(Collectors.toList());
+            assertEquals(1000, ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals(i, (long) ids.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void shouldSkipIncompleteLastRecord() throws IOException {
+
+        // Given
+        // A log that was cut off mid-write
+        Path path = temporaryFolder.newFile("log.ndjson").toPath();
+        try (JsonLog log = new JsonLog(path)) {
+            log.append(new SerialiserTest.SamIAm());
+            log.append(new SerialiserTest.SamIAm());
+        }
+        Files.write(path, "{\"id\":12".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // When
+        long count;
+        try (Stream<SerialiserTest.SamIAm> records = JsonLog.read(path, SerialiserTest.SamIAm.class)) {
+            count = records.count();
+        }
+
+        // Then
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void shouldStartNewLineWhenReopeningIncompleteLog() throws Exception {
+
+        // Given
+        // A log that was cut off mid-write
+        Path path = temporaryFolder.newFile("log.ndjson").toPath();
+        try (JsonLog log = new JsonLog(path)) {
+            log.append(new SerialiserTest.SamIAm());
+        }
+        Files.write(path, "{\"id\":12".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // When
+        // It's reopened and appended to
+        SerialiserTest.SamIAm appended = new SerialiserTest.SamIAm();
+        appended.id = 34;
+        try (JsonLog log = new JsonLog(path)) {
+            log.append(appended).get();
+        }
+
+        // Then
+        // The fragment is gone and every record can be read
+        List<Long> ids;
+        try (Stream<SerialiserTest.SamIAm> records = JsonLog.read(path, SerialiserTest.SamIAm.class)) {
+            ids = records.map(samIAm -> samIAm.id).collect(Collectors.toList());
+        }
+        assertEquals(2, ids.size());
+        assertEquals(34, (long) ids.get(1));
+        assertEquals(2, Files.readAllLines(path, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void shouldRejectAppendAfterClose() throws Exception {
+
+        // Given
+        JsonLog log = new JsonLog(temporaryFolder.newFile("log.ndjson").toPath());
+        log.close();
+
+        // When
+        CompletableFuture<Void> append = log.append(new SerialiserTest.SamIAm());
+
+        // Then
+        try {
+            append.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            return;
+        }
+        throw new AssertionError("Expected the append to fail");
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.davidcarboni.restolino.json;
+
+import org.junit.Test;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PathLocks}.
+ */
+public class PathLocksTest {
+
+    private final PathLocks locks = new PathLocks();
+
+    @Test
+    public void shouldUseSameLockForSamePath() {
+
+        // Given
+        Path path = Paths.get("target", "json", "file.json");
+        Path other = Paths.get("target", "json", "..", "json", ".", "file.json");
+
+        // Then
+        assertSame(locks.get(path), locks.get(other));
+        assertSame(locks.get(path), locks.get(path.toAbsolutePath()));
+    }
+
+    @Test
+    public void shouldAllowParallelReadersButNotWriters() throws Exception {
+
+        // Given
+        ReadWriteLock lock = locks.get(Paths.get("file.json"));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        lock.readLock().lock();
+
+        try {
+            // When
+            Future<Boolean> read = pool.submit(() -> tryAndRelease(lock.readLock()));
+            Future<Boolean> write = pool.submit(() -> tryAndRelease(lock.writeLock()));
+
+            // Then
+            assertTrue(read.get());
+            assertFalse(write.get());
+        } finally {
+            lock.readLock().unlock();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldShareFileLockUntilLastReaderHasFinished() throws Exception {
+
+        // Given
+        Path path = Files.createTempFile("shared", ".json");
+        Files.write(path, "{}".getBytes());
+
+        try {
+            // When
+            PathLocks.SharedRead first = locks.read(path, true);
+            PathLocks.SharedRead second = locks.read(path.toAbsolutePath(), true);
+
+            // Then
+            // Both readers use the same channel and lock
+            assertSame(first, second);
+            assertEquals(1, locks.openReads());
+            assertTrue(isLocked(path));
+
+            // The lock is held until the last reader has finished
+            first.close();
+            assertTrue(first.channel().isOpen());
+            assertTrue(isLocked(path));
+            second.close();
+            assertFalse(second.channel().isOpen());
+            assertFalse(isLocked(path));
+            assertEquals(0, locks.openReads());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static boolean isLocked(Path path) throws Exception {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                fail("Locked by another process");
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        }
+    }
+
+    private static boolean tryAndRelease(Lock lock) throws InterruptedException {
+        if (lock.tryLock(10, TimeUnit.MILLISECONDS)) {
+            lock.unlock();
+            return true;
+        }
+        return false;
+    }
+}
@@ -1,6 +1,19 @@
 package com.github.davidcarboni.restolino.json;
 
+import com.github.davidcarboni.restolino.Configuration;
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -10,19 +23,37 @@ import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for {@link Serialiser}.
  */
 public class SerialiserTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     public static class SamIAm {
         long id;
     }
 
+    @After
+    public void tearDown() {
+        Serialiser.maxRequestSize = 0;
+        Serialiser.atomicWrites = false;
+    }
+
     /**
      * Tests thread-safe json serialisation and deserialisation.
      */
@@ -81,4 +112,237 @@ public class SerialiserTest {
         //System.out.println(different.get());
     }
 
-}
\ No newline at end of file
+    /**
+     * Tests that, with atomic writes, concurrent readers never see a partial file.
+     */
+    @Test
+    public void shouldNeverReadPartialFileWithAtomicWrites() throws Exception {
+
+        // Given
+        // Atomic writes and a file with some content in it
+        Serialiser.atomicWrites = true;
+        final Path path = temporaryFolder.getRoot().toPath().resolve("atomic.json");
+        SamIAm initial = new SamIAm();
+        initial.id = 1;
+        Serialiser.serialise(path, initial);
+        final AtomicLong number = new AtomicLong(2);
+        final AtomicInteger nulls = new AtomicInteger();
+        List<Future<Exception>> tasks = new ArrayList<>();
+
+        // When
+        // We read and write the file concurrently
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 2000; i++) {
+            final boolean write = i % 2 == 0;
+            tasks.add(pool.submit(() -> {
+                try {
+                    if (write) {
+                        SamIAm samIAm = new SamIAm();
+                        samIAm.id = number.getAndIncrement();
+                        Serialiser.serialise(path, samIAm);
+                    } else if (Serialiser.deserialise(path, SamIAm.class) == null) {
+                        nulls.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    return e;
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+        pool.awaitTermination(30, TimeUnit.SECONDS);
+
+        // Then
+        // No reads should fail or come back empty and no temp files should be left over
+        for (Future<Exception> task : tasks) {
+            assertNull(task.get());
+        }
+        assertEquals(0, nulls.get());
+        try (Stream<Path> files = Files.list(path.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /**
+     * Tests that the same Gson instance is reused until the builder is changed.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void shouldReuseGsonUntilBuilderChanges() {
+
+        // Given
+        // A Gson instance
+        Gson gson = Serialiser.getGson();
+
+        // When
+        // We use the serialiser, get the builder (as older code does per request) and then change it
+        Serialiser.serialise(new SamIAm());
+        Serialiser.getBuilder();
+        Gson same = Serialiser.getGson();
+        Serialiser.configureBuilder(builder -> {
+        });
+        Gson rebuilt = Serialiser.getGson();
+
+        // Then
+        // The instance should only change once the builder has been changed
+        assertSame(gson, same);
+        assertNotSame(gson, rebuilt);
+        assertSame(rebuilt, Serialiser.getGson());
+    }
+
+    /**
+     * Tests that a {@link Gson} instance created while the builder is being changed includes the changes.
+     */
+    @Test
+    public void shouldNotCacheGsonCreatedDuringBuilderChanges() throws Exception {
+
+        // Given
+        // A thread that asks for Gson while we're part way through changing the builder
+        AtomicReference<Gson> during = new AtomicReference<>();
+        Thread concurrent = new Thread(() -> during.set(Serialiser.getGson()));
+
+        // When
+        Serialiser.configureBuilder(builder -> {
+            concurrent.start();
+            try {
+                concurrent.join(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            builder.registerTypeAdapter(Marker.class, (JsonSerializer<Marker>) (src, type, context) -> new JsonPrimitive("marked"));
+        });
+        concurrent.join();
+
+        // Then
+        // Both the concurrent and the cached instance have the new adapter
+        assertEquals("\"marked\"", during.get().toJson(new Marker()));
+        assertEquals("\"marked\"", Serialiser.getGson().toJson(new Marker()));
+    }
+
+    static class Marker {
+        int value = 1;
+    }
+
+    /**
+     * Tests reading a request body with a known length.
+     */
+    @Test
+    public void shouldDeserialiseRequestWithContentLength() throws IOException {
+
+        // Given
+        // A request with a Content-Length
+        HttpServletRequest request = request("{\"id\":42}", true);
+
+        // When
+        SamIAm samIAm = Serialiser.deserialise(request, SamIAm.class);
+
+        // Then
+        assertEquals(42, samIAm.id);
+    }
+
+    /**
+     * Tests that an oversized request with a known length fails before anything is read.
+     */
+    @Test(expected = PayloadTooLargeException.class)
+    public void shouldRejectLargeRequestWithContentLength() throws IOException {
+
+        // Given
+        // A maximum request size smaller than the request
+        Serialiser.maxRequestSize = 5;
+        HttpServletRequest request = request("{\"id\":42}", true);
+
+        // When
+        Serialiser.deserialise(request, SamIAm.class);
+
+        // Then
+        // We should get an exception
+    }
+
+    /**
+     * Tests that an oversized request with no Content-Length fails once the limit is passed.
+     */
+    @Test(expected = PayloadTooLargeException.class)
+    public void shouldRejectLargeRequestWithoutContentLength() throws IOException {
+
+        // Given
+        // A maximum request size smaller than the request
+        Serialiser.maxRequestSize = 5;
+        HttpServletRequest request = request("{\"id\":42}", false);
+
+        // When
+        Serialiser.deserialise(request, SamIAm.class);
+
+        // Then
+        // We should get an exception
+    }
+
+    /**
+     * Tests that a huge declared length is streamed rather than buffered, so nothing that size is allocated.
+     */
+    @Test
+    public void shouldStreamRequestWithHugeDeclaredLength() throws IOException {
+
+        // Given
+        // No size limit and a tiny body that claims to be nearly 2GB
+        Serialiser.maxRequestSize = 0;
+        HttpServletRequest request = request("{\"id\":42}", 2000000000L);
+
+        // When
+        SamIAm result = Serialiser.deserialise(request, SamIAm.class);
+
+        // Then
+        assertFalse(Serialiser.isBuffered(2000000000L));
+        assertTrue(Serialiser.isBuffered(9));
+        assertEquals(42, result.id);
+    }
+
+    /**
+     * Tests that request size isn't limited unless a limit is configured.
+     */
+    @Test
+    public void shouldNotLimitRequestSizeByDefault() throws IOException {
+
+        // Given
+        // The default configuration and a request that claims to be 20MB
+        Serialiser.maxRequestSize = new Configuration().maxRequestSize;
+        HttpServletRequest request = request("{\"id\":42}", 20 * 1024 * 1024);
+
+        // When
+        SamIAm result = Serialiser.deserialise(request, SamIAm.class);
+
+        // Then
+        assertEquals(42, result.id);
+    }
+
+    private static HttpServletRequest request(String body, boolean contentLength) throws IOException {
+        return request(body, contentLength ? (long) body.length() : -1L);
+    }
+
+    private static HttpServletRequest request(String body, long contentLength) throws IOException {
+        final ByteArrayInputStream bytes = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getContentLengthLong()).thenReturn(contentLength);
+        when(request.getInputStream()).thenReturn(new ServletInputStream() {
+            @Override
+            public int read() {
+                return bytes.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return bytes.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+        });
+        return request;
+    }
+
+}
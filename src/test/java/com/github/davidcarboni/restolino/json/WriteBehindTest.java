@@ -0,0 +1,161 @@
+package com.github.davidcarboni.restolino.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for write-behind in {@link Serialiser}.
+ */
+public class WriteBehindTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Serialiser.setWriteBehind(0);
+    }
+
+    @Test
+    public void shouldCoalesceWritesAndReadPendingVersion() throws IOException {
+
+        // Given
+        // An interval long enough that nothing is written during the test
+        Serialiser.setWriteBehind(60000);
+        Path path = temporaryFolder.getRoot().toPath().resolve("hot.json");
+
+        // When
+        for (int i = 1; i <= 100; i++) {
+            SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+            samIAm.id = i;
+            Serialiser.serialise(path, samIAm);
+        }
+
+        // Then
+        // Reads see the latest version, which hasn't been written yet
+        assertFalse(Files.exists(path));
+        assertEquals(100, Serialiser.deserialise(path, SerialiserTest.SamIAm.class).id);
+        Serialiser.flush();
+        assertTrue(Files.exists(path));
+        assertEquals(100, Serialiser.deserialise(path, SerialiserTest.SamIAm.class).id);
+    }
+
+    @Test
+    public void shouldFlushWhenTurnedOff() throws IOException {
+
+        // Given
+        Serialiser.setWriteBehind(60000);
+        Path path = temporaryFolder.getRoot().toPath().resolve("hot.json");
+        SerialiserTest.SamIAm samIAm = new SerialiserTest.SamIAm();
+        samIAm.id = 7;
+        Serialiser.serialise(path, samIAm);
+
+        // When
+        Serialiser.setWriteBehind(0);
+
+        // Then
+        assertEquals(7, Serialiser.deserialise(path, SerialiserTest.SamIAm.class).id);
+    }
+
+    @Test
+    public void shouldLetDirectWriteWin() throws IOException {
+
+        // Given
+        Serialiser.setWriteBehind(60000);
+        Path path = temporaryFolder.getRoot().toPath().resolve("hot.json");
+        SerialiserTest.SamIAm pending = new SerialiserTest.SamIAm();
+        pending.id = 1;
+        Serialiser.serialise(path, pending);
+
+        // When
+        SerialiserTest.SamIAm direct = new SerialiserTest.SamIAm();
+        direct.id = 2;
+        Serialiser.serialiseAtomically(path, direct, false);
+        Serialiser.flush();
+
+        // Then
+        assertEquals(2, Serialiser.deserialise(path, SerialiserTest.SamIAm.class).id);
+    }
+
+    @Test
+    public void shouldNotOverwriteDirectWriteWithFlushInProgress() throws Exception {
+
+        // Given
+        // A flush that's part-way through writing the pending version
+        Serialiser.setWriteBehind(60000);
+        Path path = temporaryFolder.getRoot().toPath().resolve("hot.json");
+        Serialiser.serialise(path, new SlowToWrite());
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> flush = pool.submit(Serialiser::flush);
+            assertTrue(SlowToWrite.writing.await(10, TimeUnit.SECONDS));
+
+            // When
+            // A direct write of a newer version comes in
+            SerialiserTest.SamIAm direct = new SerialiserTest.SamIAm();
+            direct.id = 2;
+            Future<?> write = pool.submit(() -> {
+                Serialiser.serialiseAtomically(path, direct, false);
+                return null;
+            });
+            Thread.sleep(100);
+            SlowToWrite.proceed.countDown();
+            flush.get(10, TimeUnit.SECONDS);
+            write.get(10, TimeUnit.SECONDS);
+        } finally {
+            SlowToWrite.proceed.countDown();
+            pool.shutdown();
+        }
+
+        // Then
+        // The direct write is the one that ends up on disk
+        Serialiser.flush();
+        assertEquals(2, Serialiser.deserialise(path, SerialiserTest.SamIAm.class).id);
+    }
+
+    /**
+     * Serialises as <code>{"id":1}</code>, but waits to be told to.
+     */
+    @JsonAdapter(SlowToWrite.Adapter.class)
+    static class SlowToWrite {
+        static final CountDownLatch writing = new CountDownLatch(1);
+        static final CountDownLatch proceed = new CountDownLatch(1);
+
+        static class Adapter extends TypeAdapter<SlowToWrite> {
+            @Override
+            public void write(JsonWriter out, SlowToWrite value) throws IOException {
+                writing.countDown();
+                try {
+                    proceed.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                out.beginObject().name("id").value(1).endObject();
+            }
+
+            @Override
+            public SlowToWrite read(JsonReader in) {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.davidcarboni.restolino.json.typeadapters;
+
+import com.github.davidcarboni.restolino.json.Serialiser;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link DateTypeAdapter}.
+ */
+public class DateTypeAdapterTest {
+
+    private final DateTypeAdapter adapter = new DateTypeAdapter();
+
+    @Test
+    public void shouldMatchSimpleDateFormat() throws ParseException {
+
+        // Given
+        // Dates either side of a daylight saving change, and now
+        SimpleDateFormat format = new SimpleDateFormat(Serialiser.toUTCStringDateFormat, Locale.US);
+        Date[] dates = {
+                Date.from(Instant.parse("2015-01-15T09:05:01Z")),
+                Date.from(Instant.parse("2015-07-15T23:59:59Z")),
+                new Date(System.currentTimeMillis() / 1000 * 1000)
+        };
+
+        for (Date date : dates) {
+
+            // When
+            String formatted = adapter.format(date);
+
+            // Then
+            assertEquals(format.format(date), formatted);
+            assertEquals(date, adapter.parse(formatted));
+            assertEquals(format.parse(formatted), adapter.parse(formatted));
+        }
+    }
+
+    @Test
+    public void shouldParseIso8601() {
+        assertEquals(Date.from(Instant.parse("2015-06-01T12:30:00Z")), adapter.parse("2015-06-01T12:30:00Z"));
+        assertEquals(Date.from(Instant.parse("2015-06-01T11:30:00Z")), adapter.parse("2015-06-01T12:30:00+01:00"));
+        assertEquals(Date.from(LocalDate.of(2015, 6, 1).atStartOfDay(ZoneId.systemDefault()).toInstant()), adapter.parse("2015-06-01"));
+    }
+}
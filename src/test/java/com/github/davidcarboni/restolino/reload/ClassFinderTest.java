@@ -0,0 +1,232 @@
+package com.github.davidcarboni.restolino.reload;
+
+import com.github.davidcarboni.restolino.Configuration;
+import com.github.davidcarboni.restolino.Main;
+import com.github.davidcarboni.restolino.framework.Api;
+import com.github.davidcarboni.restolino.framework.Startup;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reflections.Reflections;
+import org.reflections.Store;
+import org.reflections.scanners.Scanners;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ClassFinder}.
+ */
+public class ClassFinderTest {
+
+    private Configuration previous;
+    private Path sources;
+    private Path classes;
+
+    @Before
+    public void setUp() throws Exception {
+        previous = Main.configuration;
+        sources = Files.createTempDirectory("sources");
+        classes = Files.createTempDirectory("classes");
+        Main.configuration = new Configuration();
+        Main.configuration.classesReloadable = true;
+        Main.configuration.classesUrl = classes.toUri().toURL();
+        Main.configuration.packagePrefix = "reloaded";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Main.configuration = previous;
+        FileUtils.deleteDirectory(sources.toFile());
+        FileUtils.deleteDirectory(classes.toFile());
+    }
+
+    @Test
+    public void shouldFindClassesInCompileTimeIndex() {
+
+        // Given
+        // The test classes are compiled with IndexProcessor
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        // When
+        Set<String> indexed = new HashSet<>();
+        Store store = ClassFinder.loadIndex(classLoader, indexed);
+        Reflections reflections = new Reflections(store);
+        ((ConfigurationBuilder) reflections.getConfiguration()).addClassLoaders(classLoader);
+
+        // Then
+        assertNotNull(store);
+        Set<Class<?>> endpoints = reflections.getTypesAnnotatedWith(Api.class);
+        Set<Class<? extends Startup>> startups = reflections.getSubTypesOf(Startup.class);
+        assertTrue(endpoints.contains(Endpoint.class));
+        assertTrue(startups.contains(IndirectStartup.class));
+        assertTrue(indexed.contains(ClassFinder.root(ClasspathHelper.forClass(Endpoint.class).toExternalForm())));
+    }
+
+    @Test
+    public void shouldScanClasspathWithoutIndex() throws Exception {
+
+        // Given
+        // One directory compiled with IndexProcessor and one without
+        Path plain = Files.createDirectory(sources.resolve("plain"));
+        compile(classes, true, "Indexed", "@" + Api.class.getName() + " public class Indexed {}");
+        compile(plain, false, "Scanned", "@" + Api.class.getName() + " public class Scanned {}");
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{classes.toUri().toURL(), plain.toUri().toURL()}, getClass().getClassLoader())) {
+
+            // When
+            Reflections reflections = ClassFinder.fromIndex(classLoader);
+
+            // Then
+            assertNotNull(reflections);
+            Set<String> endpoints = reflections.get(Scanners.TypesAnnotated.with(Api.class));
+            assertTrue(endpoints.contains("reloaded.Indexed"));
+            assertTrue(endpoints.contains("reloaded.Scanned"));
+        } finally {
+            FileUtils.deleteDirectory(plain.toFile());
+        }
+    }
+
+    @Test
+    public void shouldGiveSameRootForJarAndIndexUrls() {
+
+        // Then
+        assertEquals("file:/app.jar", ClassFinder.root("jar:file:/app.jar!/"));
+        assertEquals("file:/app.jar", ClassFinder.root("file:/app.jar"));
+        assertEquals("file:/app/classes", ClassFinder.root("file:/app/classes/"));
+    }
+
+    @Test
+    public void shouldReindexModifiedClass() throws Exception {
+
+        // Given
+        compile("Changed", "public class Changed {}");
+        ClassFinder.newReflections();
+
+        // When
+        Path changed = compile("Changed", "@" + Api.class.getName() + " public class Changed {}");
+        Reflections reflections = ClassFinder.newReflections(Collections.singleton(changed));
+
+        // Then
+        assertEquals(Collections.singleton("reloaded.Changed"), reflections.get(Scanners.TypesAnnotated.with(Api.class)));
+    }
+
+    @Test
+    public void shouldDropDeletedClass() throws Exception {
+
+        // Given
+        compile("Kept", "@" + Api.class.getName() + " public class Kept {}");
+        Path deleted = compile("Deleted", "@" + Api.class.getName() + " public class Deleted {}");
+        ClassFinder.newReflections();
+
+        // When
+        Files.delete(deleted);
+        Reflections reflections = ClassFinder.newReflections(Collections.singleton(deleted));
+
+        // Then
+        assertEquals(Collections.singleton("reloaded.Kept"), reflections.get(Scanners.TypesAnnotated.with(Api.class)));
+    }
+
+    @Test
+    public void shouldFollowChangedSupertype() throws Exception {
+
+        // Given
+        compile("Base", "public abstract class Base implements " + Startup.class.getName() + " {}");
+        Path sub = compile("Sub", "public class Sub extends Base { public void init() {} }");
+        ClassFinder.newReflections();
+
+        // When
+        compile("Sub", "public class Sub {}");
+        Reflections reflections = ClassFinder.newReflections(Collections.singleton(sub));
+
+        // Then
+        Set<String> startups = reflections.get(Scanners.SubTypes.of(Startup.class));
+        assertTrue(startups.contains("reloaded.Base"));
+        assertFalse(startups.contains("reloaded.Sub"));
+    }
+
+    @Test
+    public void shouldScanEverythingIfClassFileCantBeRead() throws Exception {
+
+        // Given
+        compile("Endpoint", "@" + Api.class.getName() + " public class Endpoint {}");
+        Path partial = compile("Partial", "@" + Api.class.getName() + " public class Partial {}");
+        ClassFinder.newReflections();
+
+        // When
+        // The compiler is part-way through writing the file
+        byte[] bytes = Files.readAllBytes(partial);
+        Files.write(partial, Arrays.copyOf(bytes, bytes.length / 2));
+        Reflections reflections = ClassFinder.newReflections(Collections.singleton(partial));
+
+        // Then
+        // The unreadable class is skipped, but the others are still found
+        assertEquals(Collections.singleton("reloaded.Endpoint"), reflections.get(Scanners.TypesAnnotated.with(Api.class)));
+
+        // Once the file is complete, it's picked up again
+        Files.write(partial, bytes);
+        reflections = ClassFinder.newReflections(Collections.singleton(partial));
+        assertEquals(2, reflections.get(Scanners.TypesAnnotated.with(Api.class)).size());
+    }
+
+    /**
+     * Compiles a class in the "reloaded" package to the classes directory.
+     *
+     * @return The class file.
+     */
+    private Path compile(String name, String body) throws Exception {
+        return compile(classes, false, name, body);
+    }
+
+    /**
+     * Compiles a class in the "reloaded" package, with or without {@link IndexProcessor}.
+     *
+     * @return The class file.
+     */
+    private Path compile(Path output, boolean index, String name, String body) throws Exception {
+        Path source = sources.resolve(name + ".java");
+        Files.write(source, ("package reloaded; " + body).getBytes(StandardCharsets.UTF_8));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        String classpath = Paths.get(ClasspathHelper.forClass(Api.class).toURI()) + System.getProperty("path.separator") + output;
+        List<String> arguments = new ArrayList<>(index ? Arrays.asList("-processor", IndexProcessor.class.getName()) : Collections.singletonList("-proc:none"));
+        arguments.addAll(Arrays.asList("-cp", classpath, "-d", output.toString(), source.toString()));
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, errors, arguments.toArray(new String[0]));
+        assertEquals(errors.toString(), 0, result);
+        return output.resolve("reloaded").resolve(name + ".class");
+    }
+
+    @Api
+    public static class Endpoint {
+    }
+
+    public abstract static class BaseStartup implements Startup {
+    }
+
+    public static class IndirectStartup extends BaseStartup {
+        @Override
+        public void init() {
+        }
+    }
+}
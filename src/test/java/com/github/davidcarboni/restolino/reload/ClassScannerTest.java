@@ -0,0 +1,102 @@
+package com.github.davidcarboni.restolino.reload;
+
+import com.github.davidcarboni.restolino.framework.Api;
+import com.github.davidcarboni.restolino.framework.Home;
+import com.github.davidcarboni.restolino.framework.NotFound;
+import com.github.davidcarboni.restolino.framework.PostFilter;
+import com.github.davidcarboni.restolino.framework.PreFilter;
+import com.github.davidcarboni.restolino.framework.ServerError;
+import com.github.davidcarboni.restolino.framework.Startup;
+import org.eclipse.jetty.server.Server;
+import org.junit.Test;
+import org.reflections.Reflections;
+import org.reflections.Store;
+import org.reflections.scanners.Scanners;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ClassScanner}.
+ */
+public class ClassScannerTest {
+
+    @Test
+    public void shouldFindSameClassesAsReflections() {
+
+        // Given
+        // Our classes directories and some jars
+        ClassLoader classLoader = getClass().getClassLoader();
+        Collection<URL> urls = new ArrayList<>(ClasspathHelper.forPackage("com.github.davidcarboni.restolino", classLoader));
+        urls.add(ClasspathHelper.forClass(Reflections.class));
+        urls.add(ClasspathHelper.forClass(Server.class));
+
+        // When
+        Reflections expected = new Reflections(new ConfigurationBuilder().addClassLoaders(classLoader).addUrls(urls));
+        Reflections actual = new Reflections(ClassScanner.scan(urls));
+        ((ConfigurationBuilder) actual.getConfiguration()).addClassLoaders(classLoader);
+        Store store = actual.getStore();
+        actual.expandSuperTypes(store.get(Scanners.SubTypes.index()), store.get(Scanners.TypesAnnotated.index()));
+
+        // Then
+        assertFalse(actual.getTypesAnnotatedWith(Api.class).isEmpty());
+        assertEquals(expected.getTypesAnnotatedWith(Api.class), actual.getTypesAnnotatedWith(Api.class));
+        List<Class<?>> frameworkTypes = Arrays.asList(Home.class, NotFound.class, ServerError.class, Startup.class, PreFilter.class, PostFilter.class);
+        for (Class<?> type : frameworkTypes) {
+            assertEquals(type.getName(), expected.getSubTypesOf(type), actual.getSubTypesOf(type));
+        }
+        assertEquals(expected.getStore(), actual.getStore());
+    }
+
+    @Test
+    public void shouldReadSupertypesAndAnnotations() throws Exception {
+
+        // Given
+        String resource = "/" + Annotated.class.getName().replace('.', '/') + ".class";
+
+        // When
+        ClassScanner.ClassInfo info;
+        try (InputStream input = getClass().getResourceAsStream(resource)) {
+            info = ClassScanner.read(input);
+        }
+
+        // Then
+        assertEquals(Annotated.class.getName(), info.name);
+        assertEquals(Base.class.getName(), info.superclass);
+        assertEquals(Arrays.asList(Startup.class.getName()), info.interfaces);
+        assertTrue(info.annotations.contains(Api.class.getName()));
+        assertTrue(info.annotations.contains(Deprecated.class.getName()));
+    }
+
+    public abstract static class Base {
+        // Constants and a method, so there's something to skip:
+        static final long LONG = 1L;
+        static final double DOUBLE = 2.0;
+
+        abstract String name();
+    }
+
+    @Api
+    @Deprecated
+    @SuppressWarnings("unused")
+    public static class Annotated extends Base implements Startup {
+        @Override
+        String name() {
+            return "annotated";
+        }
+
+        @Override
+        public void init() {
+        }
+    }
+}
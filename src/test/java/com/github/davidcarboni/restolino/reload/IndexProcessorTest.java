@@ -0,0 +1,102 @@
+package com.github.davidcarboni.restolino.reload;
+
+import com.github.davidcarboni.restolino.framework.Api;
+import com.github.davidcarboni.restolino.framework.Startup;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reflections.util.ClasspathHelper;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link IndexProcessor}.
+ */
+public class IndexProcessorTest {
+
+    private Path sources;
+    private Path classes;
+
+    @Before
+    public void setUp() throws Exception {
+        sources = Files.createTempDirectory("sources");
+        classes = Files.createTempDirectory("classes");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(sources.toFile());
+        FileUtils.deleteDirectory(classes.toFile());
+    }
+
+    @Test
+    public void shouldKeepClassesFromPreviousBuild() throws Exception {
+
+        // Given
+        compile("Endpoint", "@" + Api.class.getName() + " public class Endpoint {}",
+                "Holder", "public class Holder { public static class Inner implements " + Startup.class.getName() + " { public void init() {} } }");
+
+        // When
+        // An incremental build of a new class
+        compile("Extra", "@" + Api.class.getName() + " public class Extra {}");
+
+        // Then
+        assertEquals(Arrays.asList(
+                "SubTypes\t" + Startup.class.getName() + "\tindexed.Holder$Inner",
+                "TypesAnnotated\t" + Api.class.getName() + "\tindexed.Endpoint",
+                "TypesAnnotated\t" + Api.class.getName() + "\tindexed.Extra"), index());
+    }
+
+    @Test
+    public void shouldDropClassesThatNoLongerQualify() throws Exception {
+
+        // Given
+        compile("Deleted", "@" + Api.class.getName() + " public class Deleted {}",
+                "Changed", "public class Changed implements " + Startup.class.getName() + " { public void init() {} }",
+                "Kept", "@" + Api.class.getName() + " public class Kept {}");
+
+        // When
+        // One class is deleted and another is no longer a Startup
+        Files.delete(classes.resolve("indexed").resolve("Deleted.class"));
+        compile("Changed", "public class Changed {}");
+
+        // Then
+        assertEquals(Arrays.asList("TypesAnnotated\t" + Api.class.getName() + "\tindexed.Kept"), index());
+    }
+
+    private List<String> index() throws Exception {
+        return Files.readAllLines(classes.resolve(IndexProcessor.INDEX), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compiles classes in the "indexed" package to the classes directory,
+     * which is also on the classpath, as it is for an incremental build.
+     *
+     * @param namesAndBodies Pairs of class name and source.
+     */
+    private void compile(String... namesAndBodies) throws Exception {
+        String classpath = Paths.get(ClasspathHelper.forClass(Api.class).toURI()) + System.getProperty("path.separator") + classes;
+        List<String> arguments = new ArrayList<>(Arrays.asList("-processor", IndexProcessor.class.getName(), "-cp", classpath, "-d", classes.toString()));
+        for (int i = 0; i < namesAndBodies.length; i += 2) {
+            Path source = sources.resolve(namesAndBodies[i] + ".java");
+            Files.write(source, ("package indexed; " + namesAndBodies[i + 1]).getBytes(StandardCharsets.UTF_8));
+            arguments.add(source.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, errors, arguments.toArray(new String[0]));
+        assertEquals(errors.toString(), 0, result);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.davidcarboni.restolino.reload;
+
+import com.github.davidcarboni.restolino.Configuration;
+import com.github.davidcarboni.restolino.Main;
+import com.github.davidcarboni.restolino.framework.Api;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reflections.Reflections;
+
+import java.io.InputStream;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link JarDeployer}.
+ */
+public class JarDeployerTest {
+
+    private Configuration previous;
+    private Path jar;
+
+    @Before
+    public void setUp() throws Exception {
+        previous = Main.configuration;
+        jar = Files.createTempFile("app", ".jar");
+        String entry = DeployedEndpoint.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(jar));
+             InputStream input = getClass().getResourceAsStream("/" + entry)) {
+            output.putNextEntry(new JarEntry(entry));
+            IOUtils.copy(input, output);
+        }
+        Main.configuration = new Configuration();
+        Main.configuration.classesReloadable = false;
+        Main.configuration.deployUrl = jar.toUri().toURL();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Main.configuration = previous;
+        Files.deleteIfExists(jar);
+    }
+
+    @Test
+    public void shouldLoadFromStagedCopy() throws Exception {
+
+        // When
+        Reflections reflections = ClassFinder.newReflections();
+        URLClassLoader classLoader = ClassFinder.getReloadableClassLoader(reflections);
+
+        // Then
+        // Only the jar is scanned, and it's loaded from a copy
+        assertEquals(Collections.singleton(DeployedEndpoint.class), reflections.getTypesAnnotatedWith(Api.class));
+        assertNotNull(classLoader);
+        Path staged = Paths.get(classLoader.getURLs()[0].toURI());
+        assertNotEquals(jar, staged);
+        assertTrue(Files.exists(staged));
+
+        // The copy is deleted once the class loader is done with
+        classLoader.close();
+        JarDeployer.unstage(classLoader);
+        assertFalse(Files.exists(staged));
+    }
+
+    @Api
+    public static class DeployedEndpoint {
+    }
+}
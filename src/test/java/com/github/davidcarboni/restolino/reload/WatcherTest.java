@@ -0,0 +1,93 @@
+package com.github.davidcarboni.restolino.reload;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for {@link Watcher}.
+ */
+public class WatcherTest {
+
+    private Path root;
+    private Watcher watcher;
+    private List<Map<Path, WatchEvent.Kind<?>>> batches = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("watcher");
+        watcher = Watcher.start(root, 500, Watcher::isNotTemporary, batches::add);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        watcher.close();
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Test
+    public void shouldCoalesceBurstIntoOneBatch() throws Exception {
+
+        // Given
+        // A burst of changes, including a new subdirectory
+        Path directory = Files.createDirectory(root.resolve("sub"));
+        for (int i = 0; i < 20; i++) {
+            Files.write(root.resolve("Class" + i + ".class"), new byte[]{1});
+            Files.write(directory.resolve("Nested" + i + ".class"), new byte[]{1});
+        }
+        Files.write(root.resolve(".Editor.swp"), new byte[]{1});
+
+        // When
+        waitForBatch();
+
+        // Then
+        assertEquals(1, batches.size());
+        Map<Path, WatchEvent.Kind<?>> changes = batches.get(0);
+        assertEquals(40, changes.size());
+        assertEquals(ENTRY_CREATE, changes.get(root.resolve("Class0.class")));
+        assertEquals(ENTRY_CREATE, changes.get(directory.resolve("Nested19.class")));
+        assertFalse(changes.containsKey(root.resolve(".Editor.swp")));
+    }
+
+    @Test
+    public void shouldIgnoreSubdirectoriesWhenNotRecursive() throws Exception {
+
+        // Given
+        // A subdirectory that exists before watching starts
+        watcher.close();
+        Path directory = Files.createDirectory(root.resolve("sub"));
+        watcher = Watcher.start(root, false, 500, Watcher::isNotTemporary, batches::add);
+
+        // When
+        Files.write(directory.resolve("Nested.class"), new byte[]{1});
+        Files.write(root.resolve("Class.class"), new byte[]{1});
+        waitForBatch();
+
+        // Then
+        assertEquals(1, batches.size());
+        Map<Path, WatchEvent.Kind<?>> changes = batches.get(0);
+        assertEquals(ENTRY_CREATE, changes.get(root.resolve("Class.class")));
+        assertFalse(changes.containsKey(directory.resolve("Nested.class")));
+    }
+
+    private void waitForBatch() throws InterruptedException {
+        for (int i = 0; i < 100 && batches.isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        // Allow time for a second batch, if there was going to be one:
+        Thread.sleep(1000);
+    }
+}